@@ -0,0 +1,74 @@
+package com.debijenkorf.assignment.benchmark;
+
+import com.debijenkorf.assignment.data.ImageType;
+import com.debijenkorf.assignment.enums.ImageTypeEnum;
+import com.debijenkorf.assignment.enums.ScaleTypeEnum;
+import com.debijenkorf.assignment.service.ImageEncoder;
+import com.debijenkorf.assignment.util.ImageUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of decoding and encoding the fixture images
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodecBenchmark {
+    private static final ImageType THUMBNAIL =
+            new ImageType(100, 100, 90, "#FF0000", ImageTypeEnum.JPG, ScaleTypeEnum.FILL);
+
+    @Param({"small", "medium", "large"})
+    private String fixture;
+
+    private byte[] encoded;
+    private BufferedImage decoded;
+    private ImageEncoder imageEncoder;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.encoded = Fixtures.load(fixture);
+        this.decoded = ImageUtil.toBufferedImage(encoded);
+
+        this.imageEncoder = new ImageEncoder();
+        imageEncoder.setRenderProperties(Fixtures.renderProperties());
+        imageEncoder.setMeterRegistry(new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public BufferedImage decode() throws IOException {
+        return ImageUtil.toBufferedImage(encoded);
+    }
+
+    @Benchmark
+    public BufferedImage decodeSubsampled() throws IOException {
+        return ImageUtil.toBufferedImage(encoded, THUMBNAIL);
+    }
+
+    @Benchmark
+    public byte[] toByteArray() throws IOException {
+        return ImageUtil.toByteArray(decoded, "jpg");
+    }
+
+    @Benchmark
+    public byte[] encode() throws IOException {
+        return imageEncoder.encode(decoded, THUMBNAIL);
+    }
+}
@@ -0,0 +1,53 @@
+package com.debijenkorf.assignment.benchmark;
+
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import com.debijenkorf.assignment.strategy.HashedDirectoryStrategy;
+import com.debijenkorf.assignment.strategy.S3DirectoryStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of generating a storage path per directory strategy
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DirectoryStrategyBenchmark {
+    @Param({"abcde.jpg", "brand-collection-sku-123456.jpg", "%2Fsomedir%2Fanotherdir%2Fabcdef.jpg"})
+    private String filename;
+
+    private S3DirectoryStrategy legacyStrategy;
+    private HashedDirectoryStrategy hashedStrategy;
+
+    @Setup
+    public void setUp() {
+        this.legacyStrategy = new S3DirectoryStrategy();
+        this.hashedStrategy = new HashedDirectoryStrategy();
+        hashedStrategy.setStorageProperties(new StorageProperties());
+        hashedStrategy.setLegacyStrategy(legacyStrategy);
+    }
+
+    @Benchmark
+    public String legacy() {
+        return legacyStrategy.getDirectoryStrategy("thumbnail", filename);
+    }
+
+    @Benchmark
+    public String hashed() {
+        return hashedStrategy.getDirectoryStrategy("thumbnail", filename);
+    }
+}
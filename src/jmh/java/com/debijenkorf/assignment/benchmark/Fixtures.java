@@ -0,0 +1,39 @@
+package com.debijenkorf.assignment.benchmark;
+
+import com.debijenkorf.assignment.app.configuration.RenderProperties;
+import com.debijenkorf.assignment.enums.InterpolationEnum;
+import lombok.AccessLevel;
+import lombok.NoArgsConstructor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * The fixture images bundled with the benchmarks: small (800x600), medium (2000x1333) and large (4000x2667) JPEGs
+ */
+@NoArgsConstructor(access = AccessLevel.PRIVATE)
+class Fixtures {
+
+    static byte[] load(String name) {
+        try (InputStream is = Fixtures.class.getResourceAsStream("/fixtures/" + name + ".jpg")) {
+            if (is == null) {
+                throw new IllegalArgumentException("No fixture image: " + name);
+            }
+            return is.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // the defaults of application.properties
+    static RenderProperties renderProperties() {
+        RenderProperties renderProperties = new RenderProperties();
+        ReflectionTestUtils.setField(renderProperties, "interpolation", InterpolationEnum.BICUBIC);
+        ReflectionTestUtils.setField(renderProperties, "progressive", false);
+        ReflectionTestUtils.setField(renderProperties, "optimizeHuffman", true);
+        ReflectionTestUtils.setField(renderProperties, "encodeBufferBytes", 64 * 1024);
+        return renderProperties;
+    }
+}
@@ -0,0 +1,67 @@
+package com.debijenkorf.assignment.benchmark;
+
+import com.debijenkorf.assignment.data.ImageType;
+import com.debijenkorf.assignment.enums.ImageTypeEnum;
+import com.debijenkorf.assignment.enums.ScaleTypeEnum;
+import com.debijenkorf.assignment.strategy.LegacyResizeEngine;
+import com.debijenkorf.assignment.strategy.RasterResizeEngine;
+import com.debijenkorf.assignment.strategy.ResizeEngine;
+import com.debijenkorf.assignment.util.ImageUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of resizing a decoded fixture image per resize engine and scale type
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResizeBenchmark {
+    @Param({"small", "medium", "large"})
+    private String fixture;
+
+    @Param({"FILL", "CROP", "SKEW"})
+    private ScaleTypeEnum scaleType;
+
+    @Param({"legacy", "raster"})
+    private String engine;
+
+    private BufferedImage original;
+    private ImageType imageType;
+    private ResizeEngine resizeEngine;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.original = ImageUtil.toBufferedImage(Fixtures.load(fixture));
+        this.imageType = new ImageType(300, 300, 90, "#FFFFFF", ImageTypeEnum.JPG, scaleType);
+
+        if (engine.equals("legacy")) {
+            this.resizeEngine = new LegacyResizeEngine();
+        } else {
+            RasterResizeEngine rasterResizeEngine = new RasterResizeEngine();
+            rasterResizeEngine.setRenderProperties(Fixtures.renderProperties());
+            this.resizeEngine = rasterResizeEngine;
+        }
+    }
+
+    @Benchmark
+    public BufferedImage resize() {
+        return resizeEngine.resize(original, imageType);
+    }
+}
@@ -1,14 +1,21 @@
 package com.debijenkorf.assignment;
 
+import com.debijenkorf.assignment.app.configuration.CacheProperties;
+import com.debijenkorf.assignment.app.configuration.HttpProperties;
 import com.debijenkorf.assignment.app.configuration.LogDBProperties;
+import com.debijenkorf.assignment.app.configuration.PregenerationProperties;
+import com.debijenkorf.assignment.app.configuration.RenderProperties;
 import com.debijenkorf.assignment.app.configuration.S3Properties;
 import com.debijenkorf.assignment.app.configuration.SourceProperties;
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 
 @SpringBootApplication
-@EnableConfigurationProperties({LogDBProperties.class, S3Properties.class, SourceProperties.class})
+@EnableConfigurationProperties({CacheProperties.class, HttpProperties.class, LogDBProperties.class,
+        PregenerationProperties.class, RenderProperties.class, S3Properties.class, SourceProperties.class,
+        StorageProperties.class})
 public class AssignmentApplication {
 
     public static void main(String[] args) {
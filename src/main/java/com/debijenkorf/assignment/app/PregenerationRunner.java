@@ -0,0 +1,44 @@
+package com.debijenkorf.assignment.app;
+
+import com.debijenkorf.assignment.service.PregenerationService;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Pre-generates the references in a file on startup, one reference per line.
+ * Enabled with --pregenerate.file=references.txt
+ */
+@Component
+@ConditionalOnProperty(name = "pregenerate.file")
+@Slf4j
+public class PregenerationRunner implements ApplicationRunner {
+    private PregenerationService pregenerationService;
+
+    @Value("${pregenerate.file}")
+    private String file;
+
+    @Override
+    public void run(ApplicationArguments args) throws Exception {
+        List<String> references = Files.readAllLines(Paths.get(file)).stream()
+                .map(String::trim)
+                .filter(x -> !x.isEmpty())
+                .toList();
+
+        log.info("Pre-generating {} references from {}", references.size(), file);
+        pregenerationService.run(references, true);
+    }
+
+    @Autowired
+    public void setPregenerationService(PregenerationService pregenerationService) {
+        this.pregenerationService = pregenerationService;
+    }
+}
@@ -0,0 +1,29 @@
+package com.debijenkorf.assignment.app.configuration;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+
+@ConfigurationProperties()
+@ConfigurationPropertiesScan
+@Getter
+public class CacheProperties {
+    @Value("${cache.memory.max-bytes}")
+    private long memoryMaxBytes;
+
+    @Value("${cache.memory.max-entry-bytes}")
+    private int memoryMaxEntryBytes;
+
+    @Value("${cache.memory.expire-after-write-ms}")
+    private long memoryExpireAfterWriteMs;
+
+    @Value("${cache.disk.enabled}")
+    private boolean diskEnabled;
+
+    @Value("${cache.disk.path}")
+    private String diskPath;
+
+    @Value("${cache.disk.max-bytes}")
+    private long diskMaxBytes;
+}
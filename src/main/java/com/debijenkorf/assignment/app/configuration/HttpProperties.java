@@ -0,0 +1,29 @@
+package com.debijenkorf.assignment.app.configuration;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+
+import java.util.Map;
+
+@ConfigurationProperties()
+@ConfigurationPropertiesScan
+@Getter
+public class HttpProperties {
+    @Value("${http.cache-control.default}")
+    private String defaultCacheControl;
+
+    @Value("#{${http.cache-control.types}}")
+    private Map<String, String> typeCacheControl;
+
+    /**
+     * Get the Cache-Control header for a definition type
+     *
+     * @param type Definition type
+     * @return Cache-Control of the type, or the default when the type has none configured
+     */
+    public String getCacheControl(String type) {
+        return typeCacheControl.getOrDefault(type.toLowerCase(), defaultCacheControl);
+    }
+}
@@ -1,5 +1,6 @@
 package com.debijenkorf.assignment.app.configuration;
 
+import com.debijenkorf.assignment.enums.OverflowPolicyEnum;
 import lombok.Getter;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -9,6 +10,9 @@ import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 @ConfigurationPropertiesScan
 @Getter
 public class LogDBProperties {
+    @Value("${logdb.enabled}")
+    private boolean enabled;
+
     @Value("${logdb.endpoint}")
     private String endpoint;
 
@@ -20,4 +24,28 @@ public class LogDBProperties {
 
     @Value("${logdb.password}")
     private String password;
+
+    @Value("${logdb.pool-size}")
+    private int poolSize;
+
+    @Value("${logdb.connection-timeout-ms}")
+    private long connectionTimeoutMs;
+
+    @Value("${logdb.queue-capacity}")
+    private int queueCapacity;
+
+    @Value("${logdb.batch-size}")
+    private int batchSize;
+
+    @Value("${logdb.flush-interval-ms}")
+    private long flushIntervalMs;
+
+    @Value("${logdb.overflow-policy}")
+    private OverflowPolicyEnum overflowPolicy;
+
+    @Value("${logdb.sample-rate}")
+    private int sampleRate;
+
+    @Value("${logdb.block-timeout-ms}")
+    private long blockTimeoutMs;
 }
@@ -0,0 +1,35 @@
+package com.debijenkorf.assignment.app.configuration;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+
+@ConfigurationProperties()
+@ConfigurationPropertiesScan
+@Getter
+public class PregenerationProperties {
+    @Value("${pregenerate.fetch-threads}")
+    private int fetchThreads;
+
+    @Value("${pregenerate.decode-threads}")
+    private int decodeThreads;
+
+    @Value("${pregenerate.render-threads}")
+    private int renderThreads;
+
+    @Value("${pregenerate.encode-threads}")
+    private int encodeThreads;
+
+    @Value("${pregenerate.upload-threads}")
+    private int uploadThreads;
+
+    @Value("${pregenerate.queue-capacity}")
+    private int queueCapacity;
+
+    @Value("${pregenerate.skip-existing}")
+    private boolean skipExisting;
+
+    @Value("${pregenerate.journal-path}")
+    private String journalPath;
+}
@@ -0,0 +1,44 @@
+package com.debijenkorf.assignment.app.configuration;
+
+import com.debijenkorf.assignment.enums.InterpolationEnum;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+
+import java.util.List;
+
+@ConfigurationProperties()
+@ConfigurationPropertiesScan
+@Getter
+public class RenderProperties {
+    @Value("${render.resize.interpolation}")
+    private InterpolationEnum interpolation;
+
+    @Value("${render.encode.progressive}")
+    private boolean progressive;
+
+    @Value("${render.encode.optimize-huffman}")
+    private boolean optimizeHuffman;
+
+    @Value("${render.encode.buffer-bytes}")
+    private int encodeBufferBytes;
+
+    @Value("${render.executor.threads}")
+    private int executorThreads;
+
+    @Value("${render.executor.queue-capacity}")
+    private int executorQueueCapacity;
+
+    @Value("${render.executor.timeout-ms}")
+    private long executorTimeoutMs;
+
+    @Value("${render.executor.retry-after-seconds}")
+    private long retryAfterSeconds;
+
+    @Value("${render.fan-out.types}")
+    private List<String> fanOutTypes;
+
+    @Value("${render.fan-out.parallelism}")
+    private int fanOutParallelism;
+}
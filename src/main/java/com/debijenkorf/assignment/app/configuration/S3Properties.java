@@ -23,4 +23,13 @@ public class S3Properties {
 
     @Value("${aws.bucket}")
     private String bucket;
+
+    @Value("${aws.multipart.threshold-bytes}")
+    private int multipartThresholdBytes;
+
+    @Value("${aws.multipart.part-size-bytes}")
+    private int multipartPartSizeBytes;
+
+    @Value("${aws.multipart.concurrency}")
+    private int multipartConcurrency;
 }
@@ -11,4 +11,31 @@ import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 public class SourceProperties {
     @Value("${source.root.url}")
     private String rootUrl;
+
+    @Value("${source.pool.max-total}")
+    private int poolMaxTotal;
+
+    @Value("${source.pool.max-per-route}")
+    private int poolMaxPerRoute;
+
+    @Value("${source.connect-timeout-ms}")
+    private int connectTimeoutMs;
+
+    @Value("${source.socket-timeout-ms}")
+    private int socketTimeoutMs;
+
+    @Value("${source.connection-request-timeout-ms}")
+    private int connectionRequestTimeoutMs;
+
+    @Value("${source.keep-alive-ms}")
+    private long keepAliveMs;
+
+    @Value("${source.max-response-bytes}")
+    private int maxResponseBytes;
+
+    @Value("${source.negative-cache.ttl-ms}")
+    private long negativeCacheTtlMs;
+
+    @Value("${source.negative-cache.max-size}")
+    private long negativeCacheMaxSize;
 }
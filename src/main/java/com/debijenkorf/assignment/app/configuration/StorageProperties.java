@@ -0,0 +1,81 @@
+package com.debijenkorf.assignment.app.configuration;
+
+import com.debijenkorf.assignment.enums.FlushModeEnum;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
+
+@ConfigurationProperties()
+@ConfigurationPropertiesScan
+@Getter
+public class StorageProperties {
+    @Value("${storage.filesystem.path}")
+    private String filesystemPath;
+
+    @Value("${storage.async.enabled}")
+    private boolean asyncEnabled;
+
+    @Value("${storage.async.max-concurrency}")
+    private int asyncMaxConcurrency;
+
+    @Value("${storage.async.max-pending-acquires}")
+    private int asyncMaxPendingAcquires;
+
+    @Value("${storage.async.acquire-timeout-ms}")
+    private long asyncAcquireTimeoutMs;
+
+    @Value("${storage.async.miss-threads}")
+    private int asyncMissThreads;
+
+    @Value("${storage.async.miss-queue-capacity}")
+    private int asyncMissQueueCapacity;
+
+    @Value("${storage.write-behind.enabled}")
+    private boolean writeBehindEnabled;
+
+    @Value("${storage.write-behind.threads}")
+    private int writeBehindThreads;
+
+    @Value("${storage.write-behind.queue-capacity}")
+    private int writeBehindQueueCapacity;
+
+    @Value("${storage.write-behind.max-attempts}")
+    private int writeBehindMaxAttempts;
+
+    @Value("${storage.write-behind.backoff-ms}")
+    private long writeBehindBackoffMs;
+
+    @Value("${storage.existence-index.enabled}")
+    private boolean existenceIndexEnabled;
+
+    @Value("${storage.existence-index.expected-keys-per-type}")
+    private long existenceIndexExpectedKeysPerType;
+
+    @Value("${storage.existence-index.false-positive-probability}")
+    private double existenceIndexFalsePositiveProbability;
+
+    @Value("${storage.existence-index.refresh-interval-ms}")
+    private long existenceIndexRefreshIntervalMs;
+
+    @Value("${storage.existence-index.verify-negatives}")
+    private boolean existenceIndexVerifyNegatives;
+
+    @Value("${storage.flush.mode}")
+    private FlushModeEnum flushMode;
+
+    @Value("${storage.flush.refresh-threads}")
+    private int flushRefreshThreads;
+
+    @Value("${storage.flush.refresh-queue-capacity}")
+    private int flushRefreshQueueCapacity;
+
+    @Value("${storage.flush.parallelism}")
+    private int flushParallelism;
+
+    @Value("${storage.flush.max-references}")
+    private int flushMaxReferences;
+
+    @Value("${storage.directory.dual-read}")
+    private boolean directoryDualRead;
+}
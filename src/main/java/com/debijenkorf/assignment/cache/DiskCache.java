@@ -0,0 +1,353 @@
+package com.debijenkorf.assignment.cache;
+
+import com.debijenkorf.assignment.app.configuration.CacheProperties;
+import com.debijenkorf.assignment.data.ImageContent;
+import jakarta.annotation.PostConstruct;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * A cache of images on the local disk, between the in-memory cache and S3, keyed by the storage path.
+ * It is bounded by the total size of the files and evicts the least recently used ones.
+ * The index is rebuilt from the cache directory on startup, so the cache survives a restart.
+ * Files are opened, moved in place and deleted under the index lock, so an opened file always matches
+ * the size and ETag of its index entry.
+ */
+@Component
+@Slf4j
+public class DiskCache {
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private CacheProperties cacheProperties;
+    private Path root;
+
+    // access-ordered, the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @PostConstruct
+    public void postConstruct() throws IOException {
+        if (!isEnabled()) {
+            return;
+        }
+
+        this.root = Paths.get(cacheProperties.getDiskPath()).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        rebuildIndex();
+    }
+
+    public boolean isEnabled() {
+        return cacheProperties.isDiskEnabled();
+    }
+
+    /**
+     * Get an image from the disk, the content holds the opened file and is not read into memory.
+     * The file is opened here, so an eviction or invalidation afterwards does not affect the content.
+     *
+     * @param path Storage path
+     * @return The cached image content, or null if it is not cached
+     */
+    public ImageContent get(String path) {
+        Path file = resolve(path);
+        if (file == null) {
+            return null;
+        }
+
+        Entry entry;
+        FileChannel channel;
+        synchronized (index) {
+            entry = index.get(path);
+            channel = entry != null ? openChannel(file) : null;
+        }
+
+        if (channel == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (entry.eTag == null) {
+            // the index was rebuilt from disk, the ETag is calculated once on the first hit
+            try {
+                entry.eTag = DigestUtils.md5Hex(Channels.newInputStream(channel));
+            } catch (IOException e) {
+                close(channel);
+                misses.incrementAndGet();
+                return null;
+            }
+        }
+
+        hits.incrementAndGet();
+        return ImageContent.of(channel, entry.size, entry.eTag, entry.lastModified);
+    }
+
+    /**
+     * Get the size and validators of an image on the disk from the index, without opening the file.
+     * It is not counted as a hit or miss. Files indexed on startup have no ETag until their first hit,
+     * for those null is returned, so a conditional request does not read the whole file.
+     *
+     * @param path Storage path
+     * @return The cached image content without a body, or null if it is not cached or its ETag is not known
+     */
+    public ImageContent stat(String path) {
+        if (resolve(path) == null) {
+            return null;
+        }
+
+        Entry entry;
+        synchronized (index) {
+            entry = index.get(path);
+        }
+
+        return entry != null && entry.eTag != null
+                ? ImageContent.ofMetadata(entry.size, entry.eTag, entry.lastModified)
+                : null;
+    }
+
+    /**
+     * Add an in-memory image to the disk
+     *
+     * @param path    Storage path
+     * @param content The image content to cache
+     */
+    public void put(String path, ImageContent content) {
+        if (content.getBytes() == null) {
+            return;
+        }
+
+        write(path, content.getETag(), file -> Files.write(file, content.getBytes()));
+    }
+
+    /**
+     * Add an image to the disk
+     *
+     * @param path  Storage path
+     * @param image The image to cache
+     */
+    public void put(String path, byte[] image) {
+        // the ETag is not calculated for nothing when the cache is disabled
+        if (!isEnabled() || image.length == 0) {
+            return;
+        }
+
+        put(path, ImageContent.of(image));
+    }
+
+    /**
+     * Write a streamed image to the disk, the stream is consumed and closed
+     *
+     * @param path    Storage path
+     * @param content The streamed image content
+     * @return Content referring to the cached file, or null if the image could not be written
+     */
+    public ImageContent putStream(String path, ImageContent content) {
+        try (InputStream is = content.getStream()) {
+            if (!write(path, content.getETag(), file -> Files.copy(is, file, StandardCopyOption.REPLACE_EXISTING))) {
+                return null;
+            }
+        } catch (IOException e) {
+            return null;
+        }
+
+        return get(path);
+    }
+
+    /**
+     * Remove an image from the disk
+     *
+     * @param path Storage path
+     */
+    public void invalidate(String path) {
+        Path file = resolve(path);
+        if (file == null) {
+            return;
+        }
+
+        synchronized (index) {
+            Entry entry = index.remove(path);
+            if (entry != null) {
+                totalBytes -= entry.size;
+            }
+            delete(file);
+        }
+    }
+
+    /**
+     * Get the hit, miss and eviction counters of the cache
+     *
+     * @return Cache statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("enabled", isEnabled());
+        statistics.put("hits", hits.get());
+        statistics.put("misses", misses.get());
+        statistics.put("evictions", evictions.get());
+        synchronized (index) {
+            statistics.put("entries", index.size());
+            statistics.put("bytes", totalBytes);
+        }
+        return statistics;
+    }
+
+    /**
+     * Write the image to a temporary file and move it in place, so readers never see a partial file
+     */
+    private boolean write(String path, String eTag, FileWriter writer) {
+        Path file = resolve(path);
+        if (file == null) {
+            return false;
+        }
+
+        Path temp = null;
+        try {
+            Files.createDirectories(file.getParent());
+            temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), TEMP_SUFFIX);
+            writer.write(temp);
+            BasicFileAttributes attributes = Files.readAttributes(temp, BasicFileAttributes.class);
+            synchronized (index) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                index(path, new Entry(attributes.size(), eTag, attributes.lastModifiedTime().toMillis()));
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("Failed to write file to disk cache: {}", e.getMessage());
+            log.debug("Failed to write file to disk cache", e);
+            if (temp != null) {
+                delete(temp);
+            }
+            return false;
+        }
+    }
+
+    private void index(String path, Entry entry) {
+        synchronized (index) {
+            Entry previous = index.put(path, entry);
+            totalBytes += entry.size - (previous != null ? previous.size : 0);
+
+            Iterator<Map.Entry<String, Entry>> it = index.entrySet().iterator();
+            while (totalBytes > cacheProperties.getDiskMaxBytes() && it.hasNext()) {
+                Map.Entry<String, Entry> eldest = it.next();
+                if (eldest.getKey().equals(path)) {
+                    continue;
+                }
+
+                totalBytes -= eldest.getValue().size;
+                it.remove();
+                delete(resolve(eldest.getKey()));
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Index the files in the cache directory, the least recently accessed ones first
+     */
+    private void rebuildIndex() throws IOException {
+        List<Map.Entry<String, BasicFileAttributes>> files = new ArrayList<>();
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.filter(Files::isRegularFile).forEach(file -> {
+                if (file.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+                    delete(file);
+                    return;
+                }
+
+                try {
+                    String path = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                    files.add(Map.entry(path, Files.readAttributes(file, BasicFileAttributes.class)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+
+        files.sort(Comparator.comparing(x -> x.getValue().lastAccessTime()));
+        files.forEach(x -> index(x.getKey(), new Entry(x.getValue().size(), null,
+                x.getValue().lastModifiedTime().toMillis())));
+
+        log.info("Indexed {} files ({} bytes) in disk cache {}", index.size(), totalBytes, root);
+    }
+
+    /**
+     * Resolve the storage path in the cache directory
+     *
+     * @return The file, or null if the cache is disabled or the path points outside the cache directory
+     */
+    private Path resolve(String path) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        Path file = root.resolve(path).normalize();
+        return file.startsWith(root) && !file.equals(root) ? file : null;
+    }
+
+    private FileChannel openChannel(Path file) {
+        try {
+            return FileChannel.open(file, StandardOpenOption.READ);
+        } catch (IOException e) {
+            // evicted or invalidated after the lookup
+            return null;
+        }
+    }
+
+    private void close(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close file from disk cache", e);
+        }
+    }
+
+    private void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.error("Failed to delete file from disk cache: {}", e.getMessage());
+            log.debug("Failed to delete file from disk cache", e);
+        }
+    }
+
+    @Autowired
+    public void setCacheProperties(CacheProperties cacheProperties) {
+        this.cacheProperties = cacheProperties;
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        private final long size;
+        private volatile String eTag;
+        private final long lastModified;
+    }
+
+    @FunctionalInterface
+    private interface FileWriter {
+        void write(Path file) throws IOException;
+    }
+}
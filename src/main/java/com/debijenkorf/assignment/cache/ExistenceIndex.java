@@ -0,0 +1,206 @@
+package com.debijenkorf.assignment.cache;
+
+import com.amazonaws.SdkClientException;
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import com.debijenkorf.assignment.service.StorageService;
+import com.debijenkorf.assignment.util.BloomFilter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An index of the files known to be in storage, with a Bloom filter per type.
+ * It is filled from a bucket listing on startup and updated on upload, so a lookup of a file
+ * that was never stored can skip the storage request. Deleted files stay in the filter,
+ * which only costs a storage request that fails as before.
+ * Until the listing is complete, every file is reported as possibly stored.
+ * <p>
+ * Files stored by other nodes are only seen in a listing, so the filters are rebuilt from a new listing
+ * periodically and swapped in when it is complete. Files stored during the listing are added to both filters.
+ * Until the next listing, a file another node stored is reported as not stored, and trusting that would render
+ * and store the image again. With several nodes negatives are therefore verified: the callers still request
+ * the path the image is written to, and the index only saves the requests for the other read paths.
+ * A single node sees every upload, so it can turn verification off and skip the storage request for every miss.
+ */
+@Component
+@Slf4j
+public class ExistenceIndex {
+    private static final String DELIMITER = "/";
+
+    private StorageProperties storageProperties;
+    private StorageService storageService;
+    private ScheduledExecutorService loader;
+    private volatile boolean loaded;
+
+    private volatile Map<String, BloomFilter> filters = new ConcurrentHashMap<>();
+    // the filters of the listing in progress, or null
+    private volatile Map<String, BloomFilter> building;
+    private final AtomicLong skipped = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+    private final AtomicLong missed = new AtomicLong();
+
+    @PostConstruct
+    public void postConstruct() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        this.loader = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "existence-index");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long interval = storageProperties.getExistenceIndexRefreshIntervalMs();
+        if (interval > 0) {
+            loader.scheduleWithFixedDelay(this::load, 0, interval, TimeUnit.MILLISECONDS);
+        } else {
+            loader.execute(this::load);
+        }
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        if (loader != null) {
+            loader.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return storageProperties.isExistenceIndexEnabled();
+    }
+
+    /**
+     * Check whether files the index rules out are still requested from storage on the path they are written to,
+     * because other nodes may have stored them since the last listing
+     *
+     * @return true if negatives are verified
+     */
+    public boolean isVerifyNegatives() {
+        return isEnabled() && storageProperties.isExistenceIndexVerifyNegatives();
+    }
+
+    /**
+     * Check whether a file may be in storage
+     *
+     * @param path Storage path
+     * @return false if the file is definitely not in storage
+     */
+    public boolean mightExist(String path) {
+        if (!isEnabled() || !loaded) {
+            return true;
+        }
+
+        if (getFilter(filters, path).mightContain(path)) {
+            return true;
+        }
+
+        skipped.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Record a file that is stored
+     *
+     * @param path Storage path
+     */
+    public void add(String path) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        getFilter(filters, path).put(path);
+        Map<String, BloomFilter> next = building;
+        if (next != null) {
+            getFilter(next, path).put(path);
+        }
+    }
+
+    /**
+     * Record a file that was ruled out but found in storage, stored by another node since the last listing
+     *
+     * @param path Storage path
+     */
+    public void addMissed(String path) {
+        missed.incrementAndGet();
+        add(path);
+    }
+
+    /**
+     * Get the number of indexed files per type and the number of skipped storage requests
+     *
+     * @return Existence index statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> types = new LinkedHashMap<>();
+        filters.forEach((type, filter) -> types.put(type, filter.getInsertions()));
+
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("enabled", isEnabled());
+        statistics.put("loaded", loaded);
+        statistics.put("skipped", skipped.get());
+        statistics.put("rebuilds", rebuilds.get());
+        statistics.put("missed", missed.get());
+        statistics.put("types", types);
+        return statistics;
+    }
+
+    /**
+     * Build new filters from a listing of the storage and swap them in, the current filters stay in use
+     * until the listing is complete. When the listing fails, the current filters are kept.
+     */
+    private void load() {
+        long start = System.currentTimeMillis();
+        AtomicLong count = new AtomicLong();
+        Map<String, BloomFilter> next = new ConcurrentHashMap<>();
+        this.building = next;
+
+        try {
+            storageService.list("", path -> {
+                getFilter(next, path).put(path);
+                count.incrementAndGet();
+            });
+            this.filters = next;
+            if (loaded) {
+                rebuilds.incrementAndGet();
+            }
+            this.loaded = true;
+            log.info("Indexed {} stored files in {} ms", count.get(), System.currentTimeMillis() - start);
+        } catch (SdkClientException e) {
+            log.error("Failed to list stored files, the existence index is not {}: {}",
+                    loaded ? "refreshed" : "used", e.getMessage());
+            log.debug("Failed to list stored files", e);
+        } finally {
+            this.building = null;
+        }
+    }
+
+    // the first directory of the path is the type
+    private BloomFilter getFilter(Map<String, BloomFilter> byType, String path) {
+        int end = path.indexOf(DELIMITER);
+        String type = end > 0 ? path.substring(0, end) : "";
+        return byType.computeIfAbsent(type, x -> new BloomFilter(
+                storageProperties.getExistenceIndexExpectedKeysPerType(),
+                storageProperties.getExistenceIndexFalsePositiveProbability()));
+    }
+
+    @Autowired
+    public void setStorageProperties(StorageProperties storageProperties) {
+        this.storageProperties = storageProperties;
+    }
+
+    @Autowired
+    public void setStorageService(StorageService storageService) {
+        this.storageService = storageService;
+    }
+}
@@ -0,0 +1,162 @@
+package com.debijenkorf.assignment.cache;
+
+import com.debijenkorf.assignment.app.configuration.CacheProperties;
+import com.debijenkorf.assignment.data.ImageContent;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An in-memory cache of images, bounded by the total size of the cached images.
+ * Eviction is frequency-aware (W-TinyLFU), so a burst of one-hit images does not push out popular ones.
+ * A flush only invalidates the cache of the node that handled it, so images also expire a while after
+ * they were cached, which bounds how long other nodes serve a flushed image.
+ */
+@Component
+public class ImageCache {
+    private static final String DELIMITER = "/";
+
+    private CacheProperties cacheProperties;
+    private Cache<String, ImageContent> cache;
+    private MeterRegistry meterRegistry;
+
+    @PostConstruct
+    public void postConstruct() {
+        Caffeine<String, ImageContent> builder = Caffeine.newBuilder()
+                .maximumWeight(cacheProperties.getMemoryMaxBytes())
+                .weigher((String key, ImageContent image) -> image.getBytes().length)
+                .recordStats();
+        if (cacheProperties.getMemoryExpireAfterWriteMs() > 0) {
+            builder.expireAfterWrite(cacheProperties.getMemoryExpireAfterWriteMs(), TimeUnit.MILLISECONDS);
+        }
+        this.cache = builder.build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "image.memory");
+    }
+
+    /**
+     * Get an image from the cache
+     *
+     * @param type     Definition type
+     * @param filename File path
+     * @return The cached image, or null if it is not cached
+     */
+    public byte[] get(String type, String filename) {
+        ImageContent content = getContent(type, filename);
+        return content != null ? content.getBytes() : null;
+    }
+
+    /**
+     * Get an image with its validators from the cache
+     *
+     * @param type     Definition type
+     * @param filename File path
+     * @return The cached image content, or null if it is not cached
+     */
+    public ImageContent getContent(String type, String filename) {
+        return cache.getIfPresent(getKey(type, filename));
+    }
+
+    /**
+     * Check whether an image is cached, without counting a hit or miss
+     *
+     * @param type     Definition type
+     * @param filename File path
+     * @return true if the image is cached
+     */
+    public boolean contains(String type, String filename) {
+        return cache.asMap().containsKey(getKey(type, filename));
+    }
+
+    /**
+     * Add an image to the cache, images larger than the configured entry size are not cached
+     *
+     * @param type     Definition type
+     * @param filename File path
+     * @param image    The image to cache
+     */
+    public void put(String type, String filename, byte[] image) {
+        if (image.length == 0 || !isCacheable(image.length)) {
+            return;
+        }
+
+        cache.put(getKey(type, filename), ImageContent.of(image));
+    }
+
+    /**
+     * Add an in-memory image with its validators to the cache
+     *
+     * @param type     Definition type
+     * @param filename File path
+     * @param content  The image content to cache
+     */
+    public void put(String type, String filename, ImageContent content) {
+        if (content.isStreamed() || content.getBytes() == null || content.getBytes().length == 0
+                || !isCacheable(content.getContentLength())) {
+            return;
+        }
+
+        cache.put(getKey(type, filename), content);
+    }
+
+    /**
+     * Check whether an image of the given size would be admitted to the cache
+     *
+     * @param size Image size in bytes
+     * @return true if the image is small enough to be cached
+     */
+    public boolean isCacheable(long size) {
+        return size <= cacheProperties.getMemoryMaxEntryBytes();
+    }
+
+    /**
+     * Remove an image from the cache
+     *
+     * @param type     Definition type
+     * @param filename File path
+     */
+    public void invalidate(String type, String filename) {
+        cache.invalidate(getKey(type, filename));
+    }
+
+    /**
+     * Get the hit, miss and eviction counters of the cache
+     *
+     * @return Cache statistics
+     */
+    public Map<String, Object> getStatistics() {
+        CacheStats stats = cache.stats();
+
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("hits", stats.hitCount());
+        statistics.put("misses", stats.missCount());
+        statistics.put("hitRate", stats.hitRate());
+        statistics.put("evictions", stats.evictionCount());
+        statistics.put("evictedBytes", stats.evictionWeight());
+        statistics.put("entries", cache.estimatedSize());
+        statistics.put("bytes", cache.policy().eviction().map(x -> x.weightedSize().orElse(0)).orElse(0L));
+        return statistics;
+    }
+
+    private String getKey(String type, String filename) {
+        return String.join(DELIMITER, type.toLowerCase(), filename);
+    }
+
+    @Autowired
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Autowired
+    public void setCacheProperties(CacheProperties cacheProperties) {
+        this.cacheProperties = cacheProperties;
+    }
+}
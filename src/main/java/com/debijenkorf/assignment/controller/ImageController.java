@@ -1,29 +1,358 @@
 package com.debijenkorf.assignment.controller;
 
+import com.debijenkorf.assignment.app.configuration.HttpProperties;
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import com.debijenkorf.assignment.data.ImageContent;
+import com.debijenkorf.assignment.enums.FlushModeEnum;
+import com.debijenkorf.assignment.util.BufferPool;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import com.debijenkorf.assignment.service.ImageService;
 
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 
 @Controller
 public class ImageController {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int BUFFER_POOL_CAPACITY = 256;
+    private static final String BYTES = "bytes";
+    private static final String ACCEPT_CH = "Accept-CH";
+    private static final List<String> WIDTH_HINTS = List.of("Sec-CH-Width", "Width");
+    private static final List<String> DPR_HINTS = List.of("Sec-CH-DPR", "DPR");
+
     private ImageService imageService;
+    private HttpProperties httpProperties;
+    private StorageProperties storageProperties;
+    private final BufferPool bufferPool = new BufferPool(BUFFER_SIZE, BUFFER_POOL_CAPACITY);
 
-    @GetMapping(value="image/show/{type}/{dummySeo}/", produces="image/jpeg")
-    @ResponseBody
-    public byte[] getImage(@PathVariable("type") String type, @PathVariable("dummySeo") String dummySeo,
-                             @RequestParam("reference") String filename) {
-        return imageService.getImage(type, filename);
+    @GetMapping(value="image/show/{type}/{dummySeo}/", produces={MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE})
+    public ResponseEntity<StreamingResponseBody> getImage(@PathVariable("type") String type,
+                                                          @PathVariable("dummySeo") String dummySeo,
+                                                          @RequestParam("reference") String filename,
+                                                          @RequestParam(value = "width", required = false) Integer width,
+                                                          @RequestParam(value = "dpr", required = false) Double dpr,
+                                                          WebRequest request) {
+        HttpHeaders headers = getResponseHeaders(type);
+        String variant = imageService.getVariant(type, getRequestedWidth(request, width, dpr));
+
+        // answer conditional requests from the cache or a HEAD request, without transferring the image
+        if (isConditional(request)) {
+            ImageContent validator = imageService.getImageValidator(variant, filename);
+            if (validator != null && request.checkNotModified(validator.getETag(), validator.getLastModified())) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .headers(headers)
+                        .eTag(validator.getETag())
+                        .build();
+            }
+        }
+
+        String range = request.getHeader(HttpHeaders.RANGE);
+        if (range != null) {
+            ResponseEntity<StreamingResponseBody> partial = getImageRange(variant, filename, range, request, headers);
+            if (partial != null) {
+                return partial;
+            }
+        }
+
+        ImageContent content = imageService.getImageContent(variant, filename);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(getMediaType(variant, content))
+                .contentLength(content.getContentLength())
+                .headers(headers)
+                .header(HttpHeaders.ACCEPT_RANGES, BYTES);
+
+        return withValidators(response, content).body(out -> content.writeTo(out, bufferPool));
+    }
+
+    /**
+     * Answer a single byte range of a stored image with 206, or with 416 when the range starts beyond the image.
+     * Multiple ranges, an If-Range that does not match and images that are not stored yet get the whole image,
+     * as do images that were replaced between reading the validator and reading the range.
+     *
+     * @return The partial response, or null if the whole image has to be sent
+     */
+    private ResponseEntity<StreamingResponseBody> getImageRange(String type, String filename, String rangeHeader,
+                                                                WebRequest request, HttpHeaders headers) {
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        ImageContent validator = ranges.size() == 1 ? imageService.getImageValidator(type, filename) : null;
+        if (validator == null || !isIfRangeMatching(request, validator)) {
+            return null;
+        }
+
+        long length = validator.getContentLength();
+        long start = ranges.get(0).getRangeStart(length);
+        long end = ranges.get(0).getRangeEnd(length);
+        if (start >= length || end < start) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .headers(headers)
+                    .header(HttpHeaders.CONTENT_RANGE, BYTES + " */" + length)
+                    .build();
+        }
+
+        ImageContent content = imageService.getImageRange(type, filename, start, end);
+        if (content == null) {
+            return null;
+        }
+        // the image was replaced since the validator was read, the range and its validators would not match
+        if (content.getETag() == null || !content.getETag().equals(validator.getETag())) {
+            closeQuietly(content);
+            return null;
+        }
+
+        long last = start + content.getContentLength() - 1;
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .contentType(getMediaType(type, content))
+                .contentLength(content.getContentLength())
+                .headers(headers)
+                .header(HttpHeaders.ACCEPT_RANGES, BYTES)
+                .header(HttpHeaders.CONTENT_RANGE, BYTES + " " + start + "-" + last + "/" + length);
+
+        return withValidators(response, content).body(out -> content.writeTo(out, bufferPool));
+    }
+
+    /**
+     * Check the If-Range precondition, which holds an ETag or a Last-Modified date.
+     * It only matches strongly, so weak ETags never match.
+     */
+    private boolean isIfRangeMatching(WebRequest request, ImageContent validator) {
+        String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return validator.getETag() != null && ifRange.equals(quote(validator.getETag()));
+        }
+        if (ifRange.startsWith("W/") || validator.getLastModified() == ImageContent.UNKNOWN_LAST_MODIFIED) {
+            return false;
+        }
+
+        try {
+            long date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return date == validator.getLastModified() / 1000 * 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private ResponseEntity.BodyBuilder withValidators(ResponseEntity.BodyBuilder response, ImageContent content) {
+        if (content.getETag() != null) {
+            response.eTag(content.getETag());
+        }
+        if (content.getLastModified() != ImageContent.UNKNOWN_LAST_MODIFIED) {
+            response.lastModified(content.getLastModified());
+        }
+        return response;
+    }
+
+    private MediaType getMediaType(String type, ImageContent content) {
+        return MediaType.parseMediaType(imageService.getContentType(type, content));
+    }
+
+    private void closeQuietly(ImageContent content) {
+        try {
+            content.close();
+        } catch (IOException e) {
+            // nothing was sent from the content
+        }
+    }
+
+    private String quote(String eTag) {
+        return eTag.startsWith("\"") ? eTag : "\"" + eTag + "\"";
+    }
+
+    /**
+     * Like {@link #getImage}, but without holding a request thread while the image is read or stored.
+     * The image is loaded before the conditional and range headers are checked, against the loaded image itself.
+     */
+    @GetMapping(value="image/async/show/{type}/{dummySeo}/", produces={MediaType.IMAGE_JPEG_VALUE, MediaType.IMAGE_PNG_VALUE})
+    public CompletableFuture<ResponseEntity<StreamingResponseBody>> getImageAsync(
+            @PathVariable("type") String type,
+            @PathVariable("dummySeo") String dummySeo,
+            @RequestParam("reference") String filename,
+            @RequestParam(value = "width", required = false) Integer width,
+            @RequestParam(value = "dpr", required = false) Double dpr,
+            WebRequest request) {
+        HttpHeaders headers = getResponseHeaders(type);
+        String variant = imageService.getVariant(type, getRequestedWidth(request, width, dpr));
+
+        return imageService.getImageAsync(variant, filename).thenApply(content -> {
+            if (isConditional(request) && request.checkNotModified(content.getETag(), content.getLastModified())) {
+                closeQuietly(content);
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                        .headers(headers)
+                        .eTag(content.getETag())
+                        .build();
+            }
+
+            String range = request.getHeader(HttpHeaders.RANGE);
+            if (range != null) {
+                ResponseEntity<StreamingResponseBody> partial = getContentRange(variant, content, range, request, headers);
+                if (partial != null) {
+                    return partial;
+                }
+            }
+
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .contentType(getMediaType(variant, content))
+                    .contentLength(content.getContentLength())
+                    .headers(headers)
+                    .header(HttpHeaders.ACCEPT_RANGES, BYTES);
+            return withValidators(response, content).body(out -> content.writeTo(out, bufferPool));
+        });
+    }
+
+    /**
+     * Answer a single byte range of an image that is loaded already, see {@link #getImageRange}
+     *
+     * @return The partial response, or null if the whole image has to be sent
+     */
+    private ResponseEntity<StreamingResponseBody> getContentRange(String type, ImageContent content,
+                                                                  String rangeHeader, WebRequest request,
+                                                                  HttpHeaders headers) {
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(rangeHeader);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (ranges.size() != 1 || !isIfRangeMatching(request, content)) {
+            return null;
+        }
+
+        long length = content.getContentLength();
+        long start = ranges.get(0).getRangeStart(length);
+        long end = ranges.get(0).getRangeEnd(length);
+        if (start >= length || end < start) {
+            closeQuietly(content);
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .headers(headers)
+                    .header(HttpHeaders.CONTENT_RANGE, BYTES + " */" + length)
+                    .build();
+        }
+
+        ImageContent slice = content.slice(start, end);
+        long last = start + slice.getContentLength() - 1;
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                .contentType(getMediaType(type, slice))
+                .contentLength(slice.getContentLength())
+                .headers(headers)
+                .header(HttpHeaders.ACCEPT_RANGES, BYTES)
+                .header(HttpHeaders.CONTENT_RANGE, BYTES + " " + start + "-" + last + "/" + length);
+
+        return withValidators(response, slice).body(out -> slice.writeTo(out, bufferPool));
     }
 
     @DeleteMapping(value="image/flush/{type}/")
-    public void flushImage(@PathVariable("type") String type, @RequestParam("reference") String filename) {
-        imageService.flushImage(type, filename);
+    @ResponseStatus(HttpStatus.OK)
+    public void flushImage(@PathVariable("type") String type, @RequestParam("reference") String filename,
+                           @RequestParam(value = "mode", required = false) FlushModeEnum mode) {
+        imageService.flushImage(type, filename, mode);
+    }
+
+    @PostMapping(value="image/flush/{type}/bulk", consumes="application/json", produces="application/json")
+    @ResponseBody
+    public Map<String, Object> flushImages(@PathVariable("type") String type, @RequestBody List<String> filenames,
+                                           @RequestParam(value = "mode", required = false) FlushModeEnum mode) {
+        if (filenames.size() > storageProperties.getFlushMaxReferences()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "At most " + storageProperties.getFlushMaxReferences() + " references can be flushed at once");
+        }
+
+        Map<String, String> failed = imageService.flushImages(type, filenames, mode);
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("requested", filenames.size());
+        report.put("flushed", filenames.stream().distinct().filter(x -> !failed.containsKey(x)).count());
+        report.put("failed", failed);
+        return report;
+    }
+
+    private HttpHeaders getResponseHeaders(String type) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setCacheControl(httpProperties.getCacheControl(type));
+        if (imageService.isResponsive(type)) {
+            // the response depends on the hints, and the browser should send them on the next requests
+            headers.setVary(List.of(WIDTH_HINTS.get(0), WIDTH_HINTS.get(1), DPR_HINTS.get(0), DPR_HINTS.get(1)));
+            headers.set(ACCEPT_CH, WIDTH_HINTS.get(0) + ", " + DPR_HINTS.get(0));
+        }
+        return headers;
+    }
+
+    /**
+     * Get the width to render in device pixels, from the width parameter times the device pixel ratio,
+     * or else from the width client hint, which is in device pixels already
+     *
+     * @return The requested width, or null when the client asked for none
+     */
+    private Integer getRequestedWidth(WebRequest request, Integer width, Double dpr) {
+        if (width != null) {
+            double ratio = dpr != null ? dpr : parseHint(request, DPR_HINTS);
+            if (!(ratio > 0) || Double.isInfinite(ratio)) {
+                ratio = 1;
+            }
+            return (int) Math.ceil(width * ratio);
+        }
+        double hint = parseHint(request, WIDTH_HINTS);
+        return hint > 0 && !Double.isInfinite(hint) ? (int) Math.ceil(hint) : null;
+    }
+
+    private double parseHint(WebRequest request, List<String> names) {
+        for (String name : names) {
+            String value = request.getHeader(name);
+            if (value != null) {
+                try {
+                    return Double.parseDouble(value.trim());
+                } catch (NumberFormatException e) {
+                    return Double.NaN;
+                }
+            }
+        }
+        return Double.NaN;
+    }
+
+    private boolean isConditional(WebRequest request) {
+        return request.getHeader(HttpHeaders.IF_NONE_MATCH) != null
+                || request.getHeader(HttpHeaders.IF_MODIFIED_SINCE) != null;
+    }
+
+    @Autowired
+    public void setHttpProperties(HttpProperties httpProperties) {
+        this.httpProperties = httpProperties;
+    }
+
+    @Autowired
+    public void setStorageProperties(StorageProperties storageProperties) {
+        this.storageProperties = storageProperties;
     }
 
     @Autowired
@@ -0,0 +1,33 @@
+package com.debijenkorf.assignment.controller;
+
+import com.debijenkorf.assignment.service.PregenerationService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+public class PregenerationController {
+    private PregenerationService pregenerationService;
+
+    @PostMapping(value = "image/pregenerate/", consumes = "application/json", produces = "application/json")
+    public Map<String, Object> start(@RequestBody List<String> filenames,
+                                     @RequestParam(value = "resume", defaultValue = "true") boolean resume) {
+        return pregenerationService.start(filenames, resume);
+    }
+
+    @GetMapping(value = "image/pregenerate/", produces = "application/json")
+    public Map<String, Object> getStatus() {
+        return pregenerationService.getStatus();
+    }
+
+    @Autowired
+    public void setPregenerationService(PregenerationService pregenerationService) {
+        this.pregenerationService = pregenerationService;
+    }
+}
@@ -0,0 +1,74 @@
+package com.debijenkorf.assignment.controller;
+
+import com.debijenkorf.assignment.cache.DiskCache;
+import com.debijenkorf.assignment.cache.ExistenceIndex;
+import com.debijenkorf.assignment.cache.ImageCache;
+import com.debijenkorf.assignment.service.DbLogger;
+import com.debijenkorf.assignment.service.RenderService;
+import com.debijenkorf.assignment.service.SourceService;
+import com.debijenkorf.assignment.service.WriteBehindService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+public class StatsController {
+    private ImageCache imageCache;
+    private DiskCache diskCache;
+    private ExistenceIndex existenceIndex;
+    private WriteBehindService writeBehindService;
+    private DbLogger dbLogger;
+    private RenderService renderService;
+    private SourceService sourceService;
+
+    @GetMapping(value = "image/stats/", produces = "application/json")
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("memoryCache", imageCache.getStatistics());
+        stats.put("diskCache", diskCache.getStatistics());
+        stats.put("existenceIndex", existenceIndex.getStatistics());
+        stats.put("render", renderService.getStatistics());
+        stats.put("source", sourceService.getStatistics());
+        stats.put("writeBehind", writeBehindService.getStatistics());
+        stats.put("dbLogger", dbLogger.getStatistics());
+        return stats;
+    }
+
+    @Autowired
+    public void setImageCache(ImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    @Autowired
+    public void setDiskCache(DiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    @Autowired
+    public void setExistenceIndex(ExistenceIndex existenceIndex) {
+        this.existenceIndex = existenceIndex;
+    }
+
+    @Autowired
+    public void setWriteBehindService(WriteBehindService writeBehindService) {
+        this.writeBehindService = writeBehindService;
+    }
+
+    @Autowired
+    public void setDbLogger(DbLogger dbLogger) {
+        this.dbLogger = dbLogger;
+    }
+
+    @Autowired
+    public void setRenderService(RenderService renderService) {
+        this.renderService = renderService;
+    }
+
+    @Autowired
+    public void setSourceService(SourceService sourceService) {
+        this.sourceService = sourceService;
+    }
+}
@@ -0,0 +1,208 @@
+package com.debijenkorf.assignment.data;
+
+import com.debijenkorf.assignment.util.BufferPool;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * The content of an image, held in memory, streamed from storage or served from a local file, with its validators.
+ * The ETag of in-memory content is the MD5 of the bytes, which matches the ETag S3 gives single-part uploads.
+ * A slice of an image, for a range request, keeps the validators of the whole image and refers to the whole
+ * image, so its format can still be recognized. Streamed content can not be read ahead, so it carries
+ * the MIME type it was stored with instead.
+ */
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Getter
+public class ImageContent implements Closeable {
+    public static final long UNKNOWN_LAST_MODIFIED = -1;
+
+    private final long contentLength;
+    private final String eTag;
+    private final long lastModified;
+    private final byte[] bytes;
+    private final InputStream stream;
+    // file opened when the image was looked up, a file replaced or deleted afterwards is still served whole
+    private final FileChannel channel;
+    // position of the content in the bytes or the file
+    private final long offset;
+    // MIME type the image was stored with, or null if it is not known
+    private final String contentType;
+
+    public static ImageContent of(byte[] bytes) {
+        return of(bytes, DigestUtils.md5Hex(bytes), UNKNOWN_LAST_MODIFIED);
+    }
+
+    public static ImageContent of(byte[] bytes, String eTag, long lastModified) {
+        return new ImageContent(bytes.length, eTag, lastModified, bytes, null, null, 0, null);
+    }
+
+    public static ImageContent of(InputStream stream, long contentLength, String eTag, long lastModified) {
+        return of(stream, contentLength, eTag, lastModified, null);
+    }
+
+    public static ImageContent of(InputStream stream, long contentLength, String eTag, long lastModified,
+                                  String contentType) {
+        return new ImageContent(contentLength, eTag, lastModified, null, stream, null, 0, contentType);
+    }
+
+    public static ImageContent of(FileChannel channel, long contentLength, String eTag, long lastModified) {
+        return new ImageContent(contentLength, eTag, lastModified, null, null, channel, 0, null);
+    }
+
+    public static ImageContent ofMetadata(long contentLength, String eTag, long lastModified) {
+        return ofMetadata(contentLength, eTag, lastModified, null);
+    }
+
+    public static ImageContent ofMetadata(long contentLength, String eTag, long lastModified, String contentType) {
+        return new ImageContent(contentLength, eTag, lastModified, null, null, null, 0, contentType);
+    }
+
+    public boolean isStreamed() {
+        return stream != null;
+    }
+
+    public boolean isFile() {
+        return channel != null;
+    }
+
+    /**
+     * Get the bytes of the content
+     *
+     * @return The bytes, or null if the content is not held in memory
+     */
+    public byte[] getBytes() {
+        if (bytes == null || (offset == 0 && contentLength == bytes.length)) {
+            return bytes;
+        }
+        return Arrays.copyOfRange(bytes, (int) offset, (int) (offset + contentLength));
+    }
+
+    /**
+     * Read the first bytes of the whole image without consuming the content, e.g. to recognize its format.
+     * Streamed content can not be read ahead.
+     *
+     * @param length Number of bytes
+     * @return The first bytes, fewer for a shorter image, or null if the content is streamed or has no body
+     */
+    public byte[] peek(int length) throws IOException {
+        if (isFile()) {
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+            int read = 0;
+            while (buffer.hasRemaining() && read != -1) {
+                read = channel.read(buffer, buffer.position());
+            }
+            return Arrays.copyOf(buffer.array(), buffer.position());
+        }
+        return bytes != null ? Arrays.copyOf(bytes, Math.min(length, bytes.length)) : null;
+    }
+
+    /**
+     * Get a range of the image, the bytes or the file are not copied but served from the start of the range
+     *
+     * @param start First byte of the range
+     * @param end   Last byte of the range, inclusive, limited to the end of the image
+     * @return Content of the range
+     * @throws IllegalStateException When the content is streamed
+     */
+    public ImageContent slice(long start, long end) {
+        end = Math.min(end, contentLength - 1);
+        long length = end - start + 1;
+        if (isFile()) {
+            return new ImageContent(length, eTag, lastModified, null, null, channel, offset + start, contentType);
+        }
+        if (isStreamed() || bytes == null) {
+            throw new IllegalStateException("Only in-memory and file content can be sliced");
+        }
+        return new ImageContent(length, eTag, lastModified, bytes, null, null, offset + start, contentType);
+    }
+
+    /**
+     * Read the whole image into memory
+     *
+     * @return The image bytes
+     */
+    public byte[] toByteArray() throws IOException {
+        if (isFile()) {
+            try (FileChannel fileChannel = channel) {
+                ByteBuffer buffer = ByteBuffer.allocate((int) contentLength);
+                // stop at the end of the file, in case it was truncated after it was opened
+                int read = 0;
+                while (buffer.hasRemaining() && read != -1) {
+                    read = fileChannel.read(buffer, offset + buffer.position());
+                }
+                return buffer.position() == buffer.capacity()
+                        ? buffer.array() : Arrays.copyOf(buffer.array(), buffer.position());
+            }
+        }
+        if (isStreamed()) {
+            try (InputStream is = stream) {
+                return is.readAllBytes();
+            }
+        }
+        return getBytes();
+    }
+
+    /**
+     * Write the image to the output, streamed content is copied through a pooled buffer and closed afterwards
+     *
+     * @param out  The output to write to
+     * @param pool Pool to take the copy buffer from
+     */
+    public void writeTo(OutputStream out, BufferPool pool) throws IOException {
+        if (isFile()) {
+            transferFile(out);
+            return;
+        }
+        if (!isStreamed()) {
+            out.write(bytes, (int) offset, (int) contentLength);
+            return;
+        }
+
+        byte[] buffer = pool.acquire();
+        try (InputStream is = stream) {
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        } finally {
+            pool.release(buffer);
+        }
+    }
+
+    /**
+     * Let the file channel transfer the file to the output, without reading the file onto the heap
+     */
+    private void transferFile(OutputStream out) throws IOException {
+        try (FileChannel fileChannel = channel) {
+            WritableByteChannel target = Channels.newChannel(out);
+            // stop at the end of the file, in case it was truncated after it was opened
+            long size = Math.min(fileChannel.size(), offset + contentLength);
+            long position = offset;
+            while (position < size) {
+                position += fileChannel.transferTo(position, size - position, target);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (isStreamed()) {
+            stream.close();
+        }
+        if (channel != null) {
+            channel.close();
+        }
+    }
+}
@@ -5,6 +5,8 @@ import com.debijenkorf.assignment.enums.ImageTypeEnum;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 
+import java.util.List;
+
 @AllArgsConstructor
 @Getter
 public class ImageType {
@@ -14,4 +16,41 @@ public class ImageType {
     private String fillColor;
     private ImageTypeEnum type;
     private ScaleTypeEnum scaleType;
+    // widths the type may also be rendered in, picked from the client hints; empty for a fixed size
+    private List<Integer> widths;
+
+    public ImageType(int height, int width, int quality, String fillColor, ImageTypeEnum type,
+                     ScaleTypeEnum scaleType) {
+        this(height, width, quality, fillColor, type, scaleType, List.of());
+    }
+
+    /**
+     * Snap a requested width to the smallest allowed width that covers it, or to the largest allowed width
+     * when none does. The width of the type itself is always allowed.
+     *
+     * @param requestedWidth Width in device pixels
+     * @return The allowed width
+     */
+    public int getBucket(int requestedWidth) {
+        int bucket = width >= requestedWidth ? width : Integer.MAX_VALUE;
+        int largest = width;
+        for (int allowed : widths) {
+            if (allowed >= requestedWidth) {
+                bucket = Math.min(bucket, allowed);
+            }
+            largest = Math.max(largest, allowed);
+        }
+        return bucket != Integer.MAX_VALUE ? bucket : largest;
+    }
+
+    /**
+     * Get this type with another width, the height is scaled to keep the aspect ratio of the type
+     *
+     * @param width The new width
+     * @return Definition type of the width variant
+     */
+    public ImageType withWidth(int width) {
+        int scaledHeight = Math.max(1, Math.round(height * (float) width / this.width));
+        return new ImageType(scaledHeight, width, quality, fillColor, type, scaleType, List.of());
+    }
 }
@@ -0,0 +1,12 @@
+package com.debijenkorf.assignment.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public class LogEvent {
+    private long timestamp;
+    private String level;
+    private String message;
+}
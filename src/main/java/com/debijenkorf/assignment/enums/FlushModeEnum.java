@@ -0,0 +1,6 @@
+package com.debijenkorf.assignment.enums;
+
+public enum FlushModeEnum {
+    DELETE,
+    REFRESH,
+}
@@ -1,6 +1,45 @@
 package com.debijenkorf.assignment.enums;
 
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
 public enum ImageTypeEnum {
-    JPG,
-    PNG,
+    JPG("image/jpeg", new byte[]{(byte) 0xFF, (byte) 0xD8, (byte) 0xFF}),
+    PNG("image/png", new byte[]{(byte) 0x89, 'P', 'N', 'G'});
+
+    // the longest signature, enough bytes to recognize any of the types
+    public static final int SIGNATURE_LENGTH = 4;
+
+    @Getter
+    private final String mimeType;
+    private final byte[] signature;
+
+    /**
+     * Get the MIME type of an image from its first bytes, e.g. for originals stored as they came from the source
+     *
+     * @param data     The image
+     * @param fallback Type to use when the image has none of the known signatures
+     * @return The MIME type of the image
+     */
+    public static String getMimeType(byte[] data, ImageTypeEnum fallback) {
+        for (ImageTypeEnum type : values()) {
+            if (type.matches(data)) {
+                return type.mimeType;
+            }
+        }
+        return fallback.mimeType;
+    }
+
+    private boolean matches(byte[] data) {
+        if (data.length < signature.length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (data[i] != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,7 @@
+package com.debijenkorf.assignment.enums;
+
+public enum OverflowPolicyEnum {
+    DROP,
+    SAMPLE,
+    BLOCK,
+}
@@ -0,0 +1,24 @@
+package com.debijenkorf.assignment.exception;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+/**
+ * Rejects a request with 503 and a Retry-After header when the service has no capacity left for it
+ */
+public class ServiceOverloadedException extends ResponseStatusException {
+    private final long retryAfterSeconds;
+
+    public ServiceOverloadedException(String reason, long retryAfterSeconds) {
+        super(HttpStatus.SERVICE_UNAVAILABLE, reason);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    @Override
+    public HttpHeaders getHeaders() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+        return headers;
+    }
+}
@@ -1,14 +1,21 @@
 package com.debijenkorf.assignment.repository;
 
 import com.debijenkorf.assignment.app.configuration.LogDBProperties;
+import com.debijenkorf.assignment.data.LogEvent;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.List;
 
 /**
  * A repository responsible for the logging table
@@ -16,42 +23,82 @@ import java.sql.SQLException;
 @Repository
 @Slf4j
 public class LogDBRepository {
+    private static final String INSERT_QUERY = "insert into db_logs (timestamp, level, message) values (?,?,?)";
+
     private LogDBProperties logDBProperties;
+    private HikariDataSource dataSource;
+    private MeterRegistry meterRegistry;
 
     /**
-     * Insert a log message to [db_logs]
-     *
-     * @param level   Log level
-     * @param message Message to log
+     * Create the connection pool after the bean has initialized.
+     * Connections are opened lazily, so the application starts while the database is unavailable.
+     * No pool is created when the database log is disabled.
      */
-    public void insert(String level, String message) {
-        String query = "insert into db_logs (timestamp, level, message) values (?,?,?)";
+    @PostConstruct
+    public void postConstruct() {
+        if (!logDBProperties.isEnabled()) {
+            return;
+        }
+
+        HikariConfig config = new HikariConfig();
+        config.setPoolName("logdb");
+        config.setJdbcUrl(String.join("/", logDBProperties.getEndpoint(), logDBProperties.getName()));
+        config.setUsername(logDBProperties.getUsername());
+        config.setPassword(logDBProperties.getPassword());
+        config.setMaximumPoolSize(logDBProperties.getPoolSize());
+        config.setMinimumIdle(0);
+        config.setConnectionTimeout(logDBProperties.getConnectionTimeoutMs());
+        config.setInitializationFailTimeout(-1);
+        config.addDataSourceProperty("reWriteBatchedInserts", "true");
+        config.setMetricRegistry(meterRegistry);
+        this.dataSource = new HikariDataSource(config);
+    }
 
-        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(query)) {
-            ps.setLong(1, System.currentTimeMillis());
-            ps.setString(2, level);
-            ps.setString(3, message);
+    @PreDestroy
+    public void preDestroy() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
 
-            int row = ps.executeUpdate();
-            if (row != 1) {
-                log.error("Failed to insert row to db_logs");
+    /**
+     * Insert log messages to [db_logs] in a single JDBC batch
+     *
+     * @param events Log events to insert
+     * @return true if the batch was inserted
+     */
+    public boolean insertBatch(List<LogEvent> events) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try (Connection conn = getConnection(); PreparedStatement ps = conn.prepareStatement(INSERT_QUERY)) {
+            for (LogEvent event : events) {
+                ps.setLong(1, event.getTimestamp());
+                ps.setString(2, event.getLevel());
+                ps.setString(3, event.getMessage());
+                ps.addBatch();
             }
+
+            ps.executeBatch();
+            outcome = "success";
+            return true;
         } catch (SQLException e) {
-            log.error("Failed to insert row to db_logs: {}", e.getMessage());
-            log.debug("Failed to insert row to db_logs", e);
+            log.error("Failed to insert {} rows to db_logs: {}", events.size(), e.getMessage());
+            log.debug("Failed to insert rows to db_logs", e);
+            return false;
+        } finally {
+            sample.stop(meterRegistry.timer("logdb.insert", "mode", "batch", "outcome", outcome));
+            meterRegistry.summary("logdb.batch.size").record(events.size());
         }
     }
 
     /**
-     * Establish Database connection
+     * Get a pooled Database connection
      *
      * @return Database connection
      */
     public Connection getConnection() throws SQLException {
-        String url = String.join("/", logDBProperties.getEndpoint(), logDBProperties.getName());
-
         try {
-            return DriverManager.getConnection(url, logDBProperties.getUsername(), logDBProperties.getPassword());
+            return dataSource.getConnection();
         } catch (SQLException e) {
             log.error("Failed to get DB connection: {}", e.getMessage());
             log.debug("Failed to get DB connection", e);
@@ -59,6 +106,11 @@ public class LogDBRepository {
         }
     }
 
+    @Autowired
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @Autowired
     public void setLogDBProperties(LogDBProperties logDBProperties) {
         this.logDBProperties = logDBProperties;
@@ -0,0 +1,16 @@
+package com.debijenkorf.assignment.service;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking access to stored images, for the async request path
+ */
+public interface AsyncStorageService {
+    CompletableFuture<byte[]> download(String path);
+
+    CompletableFuture<Void> upload(String path, byte[] data, String contentType);
+
+    CompletableFuture<Void> delete(String path);
+
+    boolean isNotFound(Throwable e);
+}
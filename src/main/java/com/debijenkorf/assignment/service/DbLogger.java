@@ -1,13 +1,78 @@
 package com.debijenkorf.assignment.service;
 
+import com.debijenkorf.assignment.app.configuration.LogDBProperties;
+import com.debijenkorf.assignment.data.LogEvent;
 import com.debijenkorf.assignment.enums.LoggingEnum;
+import com.debijenkorf.assignment.enums.OverflowPolicyEnum;
 import com.debijenkorf.assignment.repository.LogDBRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A service responsible for logging to the database.
+ * Events are put on a bounded lock-free queue and written in batches by a background thread,
+ * so request threads never wait for the database. When the database log is disabled the events are discarded.
+ */
 @Service
+@Slf4j
 public class DbLogger {
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private LogDBProperties logDBProperties;
     private LogDBRepository logRepository;
+    private Thread writer;
+    private volatile boolean running;
+
+    private final Queue<LogEvent> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queueSize = new AtomicInteger();
+    private final AtomicLong offered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @PostConstruct
+    public void postConstruct() {
+        if (!logDBProperties.isEnabled()) {
+            return;
+        }
+        if (logDBProperties.getOverflowPolicy() == OverflowPolicyEnum.SAMPLE && logDBProperties.getSampleRate() < 1) {
+            throw new IllegalStateException("logdb.sample-rate must be at least 1 with the SAMPLE overflow policy: "
+                    + logDBProperties.getSampleRate());
+        }
+
+        this.running = true;
+        this.writer = new Thread(this::writeLoop, "db-logger");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Stop the writer and flush the queued events
+     */
+    @PreDestroy
+    public void preDestroy() throws InterruptedException {
+        if (writer == null) {
+            return;
+        }
+
+        running = false;
+        LockSupport.unpark(writer);
+        writer.join(TimeUnit.SECONDS.toMillis(10));
+    }
 
     public void info(String message) {
         log(LoggingEnum.INFO, message);
@@ -25,8 +90,118 @@ public class DbLogger {
         log(LoggingEnum.DEBUG, message);
     }
 
+    /**
+     * Get the queue depth and the counters of written and dropped events
+     *
+     * @return DB logger statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("enabled", logDBProperties.isEnabled());
+        statistics.put("overflowPolicy", logDBProperties.getOverflowPolicy());
+        statistics.put("queueDepth", queueSize.get());
+        statistics.put("written", written.get());
+        statistics.put("dropped", dropped.get());
+        statistics.put("failed", failed.get());
+        return statistics;
+    }
+
     private void log(LoggingEnum level, String message) {
-        logRepository.insert(level.toString(), message);
+        if (!logDBProperties.isEnabled()) {
+            return;
+        }
+        if (!reserve()) {
+            dropped.incrementAndGet();
+            return;
+        }
+
+        queue.offer(new LogEvent(System.currentTimeMillis(), level.toString(), message));
+        if (queueSize.get() >= logDBProperties.getBatchSize()) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Reserve a place in the queue according to the overflow policy
+     *
+     * @return false if the event has to be dropped
+     */
+    private boolean reserve() {
+        int capacity = logDBProperties.getQueueCapacity();
+
+        switch (logDBProperties.getOverflowPolicy()) {
+            case SAMPLE -> {
+                // above three quarters of the capacity keep only every n-th event
+                boolean sampled = offered.incrementAndGet() % logDBProperties.getSampleRate() == 0;
+                if (queueSize.get() >= capacity / 4 * 3 && !sampled) {
+                    return false;
+                }
+                return tryReserve(capacity);
+            }
+            case BLOCK -> {
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(logDBProperties.getBlockTimeoutMs());
+                while (!tryReserve(capacity)) {
+                    if (System.nanoTime() >= deadline) {
+                        return false;
+                    }
+                    LockSupport.unpark(writer);
+                    LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                }
+                return true;
+            }
+            default -> {
+                return tryReserve(capacity);
+            }
+        }
+    }
+
+    private boolean tryReserve(int capacity) {
+        int size;
+        do {
+            size = queueSize.get();
+            if (size >= capacity) {
+                return false;
+            }
+        } while (!queueSize.compareAndSet(size, size + 1));
+
+        return true;
+    }
+
+    private void writeLoop() {
+        long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(logDBProperties.getFlushIntervalMs());
+        List<LogEvent> batch = new ArrayList<>(logDBProperties.getBatchSize());
+
+        while (running || !queue.isEmpty()) {
+            LogEvent event;
+            while (batch.size() < logDBProperties.getBatchSize() && (event = queue.poll()) != null) {
+                batch.add(event);
+            }
+
+            if (batch.isEmpty()) {
+                LockSupport.parkNanos(flushIntervalNanos);
+                continue;
+            }
+
+            queueSize.addAndGet(-batch.size());
+            try {
+                if (logRepository.insertBatch(batch)) {
+                    written.addAndGet(batch.size());
+                } else {
+                    failed.addAndGet(batch.size());
+                }
+            } catch (RuntimeException e) {
+                // the writer must survive, or the queue fills up and every later event is dropped
+                failed.addAndGet(batch.size());
+                log.error("Failed to write {} log events: {}", batch.size(), e.getMessage());
+                log.debug("Failed to write log events", e);
+            }
+            batch.clear();
+        }
+    }
+
+    @Autowired
+    public void setLogDBProperties(LogDBProperties logDBProperties) {
+        this.logDBProperties = logDBProperties;
     }
 
     @Autowired
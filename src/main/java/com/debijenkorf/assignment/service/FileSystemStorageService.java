@@ -0,0 +1,325 @@
+package com.debijenkorf.assignment.service;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import com.debijenkorf.assignment.data.ImageContent;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * A service responsible for storing files in a directory on the local filesystem,
+ * for a single-node deployment or for running without S3.
+ * Missing files are reported with the same 404 {@link AmazonS3Exception} as S3,
+ * so the callers handle both storages alike.
+ * The MD5 of a file is calculated when it is written and kept in an extended attribute of the file,
+ * so reads do not hash the file again.
+ */
+@Service
+@ConditionalOnProperty(name = "storage.type", havingValue = "filesystem")
+@Slf4j
+public class FileSystemStorageService implements StorageService {
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String MD5_ATTRIBUTE = "md5";
+    private static final int MAX_OPEN_ATTEMPTS = 3;
+
+    private StorageProperties storageProperties;
+    private Path root;
+    private boolean digestAttributeSupported;
+
+    @PostConstruct
+    public void postConstruct() throws IOException {
+        this.root = Paths.get(storageProperties.getFilesystemPath()).toAbsolutePath().normalize();
+        Files.createDirectories(root);
+        this.digestAttributeSupported = Files.getFileStore(root)
+                .supportsFileAttributeView(UserDefinedFileAttributeView.class);
+        if (!digestAttributeSupported) {
+            log.warn("Extended attributes are not supported in {}, ETags are derived from the size and "
+                    + "modification time of the files", root);
+        }
+        log.info("Storing files in {}", root);
+    }
+
+    /**
+     * Open a file for reading
+     *
+     * @param path The file path we want to download
+     * @return InputStream of the file
+     */
+    @Override
+    public InputStream download(String path) {
+        try {
+            return Files.newInputStream(resolve(path));
+        } catch (NoSuchFileException e) {
+            throw notFound(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Open a file for streaming, the content holds the opened file and is not read into memory.
+     * A file that is replaced or deleted after it was opened is still served as it was.
+     * The attributes are read before the file is opened and checked again afterwards, when the file was
+     * replaced in between it is opened again, so the validators always belong to the opened file.
+     * A file that keeps being replaced is hashed from the opened file instead.
+     *
+     * @param path The file path we want to download
+     * @return Content of the file
+     */
+    @Override
+    public ImageContent open(String path) {
+        Path file = resolve(path);
+        for (int attempt = 1; attempt <= MAX_OPEN_ATTEMPTS; attempt++) {
+            BasicFileAttributes before;
+            String eTag;
+            FileChannel channel;
+            try {
+                before = Files.readAttributes(file, BasicFileAttributes.class);
+                eTag = getETag(file, before);
+                channel = FileChannel.open(file, StandardOpenOption.READ);
+            } catch (NoSuchFileException e) {
+                throw notFound(path);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            try {
+                BasicFileAttributes after = Files.readAttributes(file, BasicFileAttributes.class);
+                if (Objects.equals(before.fileKey(), after.fileKey()) && before.size() == after.size()
+                        && before.lastModifiedTime().equals(after.lastModifiedTime())) {
+                    return ImageContent.of(channel, before.size(), eTag, before.lastModifiedTime().toMillis());
+                }
+                if (attempt == MAX_OPEN_ATTEMPTS) {
+                    return ImageContent.of(channel, channel.size(), DigestUtils.md5Hex(Channels.newInputStream(
+                            channel.position(0))), ImageContent.UNKNOWN_LAST_MODIFIED);
+                }
+            } catch (NoSuchFileException e) {
+                // deleted after it was opened, the next attempt tells whether it was replaced before
+            } catch (IOException e) {
+                closeQuietly(channel);
+                throw new UncheckedIOException(e);
+            }
+            closeQuietly(channel);
+        }
+
+        throw notFound(path);
+    }
+
+    /**
+     * Open a range of a file, the content refers to the file from the start of the range
+     *
+     * @param path  The file path we want to download
+     * @param start First byte of the range
+     * @param end   Last byte of the range, inclusive
+     * @return Content of the range, with the validators of the whole file
+     */
+    @Override
+    public ImageContent open(String path, long start, long end) {
+        return open(path).slice(start, end);
+    }
+
+    /**
+     * Get the size and validators of a file, the ETag is the MD5 of the content like S3 gives single-part uploads
+     *
+     * @param path The file path
+     * @return Content of the file without a body
+     */
+    @Override
+    public ImageContent stat(String path) {
+        Path file = resolve(path);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return ImageContent.ofMetadata(attributes.size(), getETag(file, attributes),
+                    attributes.lastModifiedTime().toMillis());
+        } catch (NoSuchFileException e) {
+            throw notFound(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write a file to a temporary file and move it in place, so readers never see a partial file.
+     * The content type is not kept, the type of a stored file follows from its content.
+     *
+     * @param path        The location we want to upload the file to
+     * @param data        The file content we want to upload
+     * @param contentType MIME type of the content
+     */
+    @Override
+    public void upload(String path, byte[] data, String contentType) throws IOException {
+        Path file = resolve(path);
+        Files.createDirectories(file.getParent());
+
+        Path temp = Files.createTempFile(file.getParent(), file.getFileName().toString(), TEMP_SUFFIX);
+        try {
+            Files.write(temp, data);
+            // the attribute is moved in place together with the content
+            writeDigest(temp, DigestUtils.md5Hex(data));
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Delete a file, a missing file is not an error
+     *
+     * @param path The file path we want to delete
+     */
+    @Override
+    public void delete(String path) {
+        try {
+            Files.deleteIfExists(resolve(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Delete files one by one
+     *
+     * @param paths The file paths we want to delete
+     * @return The paths that could not be deleted, with the reason
+     */
+    @Override
+    public Map<String, String> delete(Collection<String> paths) {
+        Map<String, String> failed = new LinkedHashMap<>();
+        for (String path : paths) {
+            try {
+                delete(path);
+            } catch (UncheckedIOException | ResponseStatusException e) {
+                failed.put(path, e.getMessage());
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * List the files under the deepest directory of the prefix
+     *
+     * @param prefix   The path prefix of the files
+     * @param consumer Receives the path of every file
+     */
+    @Override
+    public void list(String prefix, Consumer<String> consumer) {
+        int slash = prefix.lastIndexOf('/');
+        Path start = slash <= 0 ? root : resolve(prefix.substring(0, slash));
+        if (!Files.isDirectory(start)) {
+            return;
+        }
+
+        try (Stream<Path> files = Files.walk(start)) {
+            Iterator<Path> it = files.filter(Files::isRegularFile).iterator();
+            while (it.hasNext()) {
+                Path file = it.next();
+                String path = root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/");
+                if (path.startsWith(prefix) && !path.endsWith(TEMP_SUFFIX)) {
+                    consumer.accept(path);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Resolve the storage path in the storage directory
+     *
+     * @throws ResponseStatusException When the path points outside the storage directory
+     */
+    private Path resolve(String path) {
+        Path file = root.resolve(path).normalize();
+        if (!file.startsWith(root) || file.equals(root)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid storage path: " + path);
+        }
+        return file;
+    }
+
+    /**
+     * Get the ETag of a file from its MD5 attribute. Files without the attribute, e.g. copied into the
+     * directory, are hashed once and get the attribute.
+     */
+    private String getETag(Path file, BasicFileAttributes attributes) throws IOException {
+        if (!digestAttributeSupported) {
+            return Long.toHexString(attributes.lastModifiedTime().toMillis()) + "-"
+                    + Long.toHexString(attributes.size());
+        }
+
+        UserDefinedFileAttributeView view = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+        if (view.list().contains(MD5_ATTRIBUTE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(view.size(MD5_ATTRIBUTE));
+            view.read(MD5_ATTRIBUTE, buffer);
+            return new String(buffer.array(), 0, buffer.position(), StandardCharsets.US_ASCII);
+        }
+
+        String md5;
+        try (InputStream is = Files.newInputStream(file)) {
+            md5 = DigestUtils.md5Hex(is);
+        }
+        writeDigest(file, md5);
+        return md5;
+    }
+
+    private void writeDigest(Path file, String md5) {
+        if (!digestAttributeSupported) {
+            return;
+        }
+
+        try {
+            Files.getFileAttributeView(file, UserDefinedFileAttributeView.class)
+                    .write(MD5_ATTRIBUTE, ByteBuffer.wrap(md5.getBytes(StandardCharsets.US_ASCII)));
+        } catch (IOException e) {
+            log.debug("Failed to write the MD5 attribute of {}", file, e);
+        }
+    }
+
+    private void closeQuietly(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close file", e);
+        }
+    }
+
+    private AmazonS3Exception notFound(String path) {
+        AmazonS3Exception e = new AmazonS3Exception("File not found: " + path);
+        e.setStatusCode(HttpStatus.NOT_FOUND.value());
+        e.setErrorCode("NoSuchKey");
+        return e;
+    }
+
+    @Autowired
+    public void setStorageProperties(StorageProperties storageProperties) {
+        this.storageProperties = storageProperties;
+    }
+}
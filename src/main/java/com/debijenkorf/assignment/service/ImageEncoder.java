@@ -0,0 +1,123 @@
+package com.debijenkorf.assignment.service;
+
+import com.debijenkorf.assignment.app.configuration.RenderProperties;
+import com.debijenkorf.assignment.data.ImageType;
+import com.debijenkorf.assignment.enums.ImageTypeEnum;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.plugins.jpeg.JPEGImageWriteParam;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A service responsible for encoding rendered images.
+ * JPEG output uses the quality of the image type; writers and output buffers are reused per thread.
+ */
+@Service
+public class ImageEncoder {
+    // a thread's output buffer is replaced when an image made it grow beyond this many times its initial size
+    private static final int MAX_BUFFER_GROWTH = 16;
+
+    private RenderProperties renderProperties;
+    private MeterRegistry meterRegistry;
+
+    private final ThreadLocal<Map<ImageTypeEnum, ImageWriter>> writers =
+            ThreadLocal.withInitial(() -> new EnumMap<>(ImageTypeEnum.class));
+    private final ThreadLocal<ByteArrayOutputStream> buffers = new ThreadLocal<>();
+
+    /**
+     * Encode an image in the format and quality of the definition type
+     *
+     * @param image     The image to encode
+     * @param imageType Definition type
+     * @return The encoded image
+     */
+    public byte[] encode(BufferedImage image, ImageType imageType) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        ImageWriter writer = getWriter(imageType.getType());
+        ByteArrayOutputStream buffer = getBuffer();
+
+        try (ImageOutputStream ios = new MemoryCacheImageOutputStream(buffer)) {
+            writer.setOutput(ios);
+            writer.write(null, new IIOImage(image, null, null), getWriteParam(writer, imageType));
+        } finally {
+            writer.reset();
+        }
+
+        byte[] encoded = buffer.toByteArray();
+        String format = imageType.getType().toString();
+        sample.stop(meterRegistry.timer("render.encode", "format", format));
+        meterRegistry.summary("render.encoded.bytes", "format", format).record(encoded.length);
+        if (encoded.length > renderProperties.getEncodeBufferBytes() * MAX_BUFFER_GROWTH) {
+            buffers.remove();
+        }
+        return encoded;
+    }
+
+    private ImageWriteParam getWriteParam(ImageWriter writer, ImageType imageType) {
+        ImageWriteParam param = writer.getDefaultWriteParam();
+
+        // PNG is lossless, the quality only applies to JPEG
+        if (param instanceof JPEGImageWriteParam jpegParam) {
+            jpegParam.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            jpegParam.setCompressionQuality(Math.min(100, Math.max(0, imageType.getQuality())) / 100f);
+            jpegParam.setOptimizeHuffmanTables(renderProperties.isOptimizeHuffman());
+            if (renderProperties.isProgressive()) {
+                jpegParam.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            }
+        }
+
+        return param;
+    }
+
+    private ImageWriter getWriter(ImageTypeEnum type) throws IOException {
+        Map<ImageTypeEnum, ImageWriter> threadWriters = writers.get();
+        ImageWriter writer = threadWriters.get(type);
+
+        if (writer == null) {
+            Iterator<ImageWriter> available = ImageIO.getImageWritersByFormatName(type.toString());
+            if (!available.hasNext()) {
+                throw new IOException("No image writer for " + type);
+            }
+            writer = available.next();
+            threadWriters.put(type, writer);
+        }
+
+        return writer;
+    }
+
+    private ByteArrayOutputStream getBuffer() {
+        ByteArrayOutputStream buffer = buffers.get();
+
+        if (buffer == null) {
+            buffer = new ByteArrayOutputStream(renderProperties.getEncodeBufferBytes());
+            buffers.set(buffer);
+        }
+
+        buffer.reset();
+        return buffer;
+    }
+
+    @Autowired
+    public void setRenderProperties(RenderProperties renderProperties) {
+        this.renderProperties = renderProperties;
+    }
+
+    @Autowired
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+}
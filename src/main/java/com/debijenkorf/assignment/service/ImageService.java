@@ -1,33 +1,50 @@
 package com.debijenkorf.assignment.service;
 
 import com.amazonaws.services.s3.model.AmazonS3Exception;
-import com.debijenkorf.assignment.app.configuration.SourceProperties;
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import com.debijenkorf.assignment.cache.DiskCache;
+import com.debijenkorf.assignment.cache.ExistenceIndex;
+import com.debijenkorf.assignment.cache.ImageCache;
+import com.debijenkorf.assignment.data.ImageContent;
 import com.debijenkorf.assignment.data.ImageType;
+import com.debijenkorf.assignment.enums.FlushModeEnum;
 import com.debijenkorf.assignment.enums.ImageTypeEnum;
 import com.debijenkorf.assignment.enums.ScaleTypeEnum;
-import com.debijenkorf.assignment.strategy.S3DirectoryStrategy;
+import com.debijenkorf.assignment.exception.ServiceOverloadedException;
+import com.debijenkorf.assignment.strategy.DirectoryStrategy;
+import com.debijenkorf.assignment.util.SingleFlight;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
-import org.apache.http.client.methods.CloseableHttpResponse;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClients;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 
-import java.awt.*;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
-import static com.debijenkorf.assignment.util.ImageUtil.toBufferedImage;
-import static com.debijenkorf.assignment.util.ImageUtil.toByteArray;
 
 
 /**
@@ -36,27 +53,97 @@ import static com.debijenkorf.assignment.util.ImageUtil.toByteArray;
 @Service
 @Slf4j
 public class ImageService {
-    private static final String DEFAULT_IMAGE_TYPE = "original";
+    public static final String DEFAULT_IMAGE_TYPE = "original";
+    // one multi-object delete request per batch
+    private static final int FLUSH_BATCH_SIZE = 1000;
+    private static final String REFRESH_QUEUE_FULL = "Refresh queue is full";
+    private static final String OUTCOME_HIT = "hit";
+    private static final String OUTCOME_MISS = "miss";
+    private static final String OUTCOME_RENDER = "render";
+    private static final String OUTCOME_ERROR = "error";
+    // width variants are named after their type, e.g. thumbnail-w200
+    private static final String WIDTH_SEPARATOR = "-w";
+    private static final List<Integer> THUMBNAIL_WIDTHS = List.of(50, 100, 200, 300);
 
     private DbLogger dbLog;
-    private S3Service s3Service;
-    private SourceProperties sourceProperties;
-    private S3DirectoryStrategy directoryStrategy;
+    private ImageCache imageCache;
+    private DiskCache diskCache;
+    private ExistenceIndex existenceIndex;
+    private StorageService storageService;
+    private AsyncStorageService asyncStorageService;
+    private StorageProperties storageProperties;
+    private WriteBehindService writeBehindService;
+    private SourceService sourceService;
+    private DirectoryStrategy directoryStrategy;
+    private RenderService renderService;
     private Map<String, ImageType> imageTypes;
-    private final CloseableHttpClient httpClient = HttpClients.createDefault();
+    private Map<String, ImageType> variants;
+    private final SingleFlight<String, byte[]> inFlight = new SingleFlight<>();
+    private final SingleFlight<String, ImageContent> asyncInFlight = new SingleFlight<>();
+    // images uploaded by the async path, an image flushed during its upload is deleted again
+    private final Map<String, byte[]> asyncUploads = new ConcurrentHashMap<>();
+    private ThreadPoolExecutor missExecutor;
+    private ExecutorService flushExecutor;
+    private MeterRegistry meterRegistry;
+    private ThreadPoolExecutor refreshExecutor;
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
 
     @PostConstruct
     public void postConstruct() {
         this.imageTypes = Map.of(
-                "thumbnail", new ImageType(100, 100, 90, "#FF0000", ImageTypeEnum.JPG, ScaleTypeEnum.FILL),
-                "fill-red", new ImageType(100, 100, 90, "#FF0000", ImageTypeEnum.JPG, ScaleTypeEnum.FILL),
-                "fill-green", new ImageType(100, 100, 90, "#00FF00", ImageTypeEnum.JPG, ScaleTypeEnum.FILL),
-                "fill-blue", new ImageType(100, 100, 90, "#0000FF", ImageTypeEnum.JPG, ScaleTypeEnum.FILL),
-                "crop", new ImageType(1000, 1000, 90, "#FFFFFF", ImageTypeEnum.JPG, ScaleTypeEnum.CROP),
+                "thumbnail", new ImageType(100, 100, 90, "#FF0000", ImageTypeEnum.JPG, ScaleTypeEnum.FILL,
+                        THUMBNAIL_WIDTHS),
+                "fill-red", new ImageType(100, 100, 90, "#FF0000", ImageTypeEnum.JPG, ScaleTypeEnum.FILL,
+                        THUMBNAIL_WIDTHS),
+                "fill-green", new ImageType(100, 100, 90, "#00FF00", ImageTypeEnum.JPG, ScaleTypeEnum.FILL,
+                        THUMBNAIL_WIDTHS),
+                "fill-blue", new ImageType(100, 100, 90, "#0000FF", ImageTypeEnum.JPG, ScaleTypeEnum.FILL,
+                        THUMBNAIL_WIDTHS),
+                "crop", new ImageType(1000, 1000, 90, "#FFFFFF", ImageTypeEnum.JPG, ScaleTypeEnum.CROP,
+                        List.of(320, 640, 1000, 1600)),
                 "skew", new ImageType(100, 100, 90, "#000000", ImageTypeEnum.JPG, ScaleTypeEnum.SKEW),
                 "skew-high", new ImageType(300, 100, 90, "#FF0000", ImageTypeEnum.JPG, ScaleTypeEnum.SKEW),
                 DEFAULT_IMAGE_TYPE, new ImageType(0, 0, 100, "#FFFFFF", ImageTypeEnum.JPG, ScaleTypeEnum.FILL)
         );
+
+        // every allowed width is a type of its own, so it is cached and stored like any other type
+        this.variants = new HashMap<>();
+        imageTypes.forEach((name, imageType) -> imageType.getWidths().stream()
+                .filter(x -> x != imageType.getWidth())
+                .forEach(x -> variants.put(name + WIDTH_SEPARATOR + x, imageType.withWidth(x))));
+
+        if (storageProperties.isAsyncEnabled() && asyncStorageService == null) {
+            log.warn("Async storage is only supported with the S3 storage, image/async/show is not available");
+        }
+        if (asyncStorageService != null) {
+            // bounded like the render pool, a burst of misses is rejected with 503 instead of queueing on the heap
+            AtomicInteger missThreadCount = new AtomicInteger();
+            this.missExecutor = new ThreadPoolExecutor(storageProperties.getAsyncMissThreads(),
+                    storageProperties.getAsyncMissThreads(), 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(storageProperties.getAsyncMissQueueCapacity()), r -> {
+                        Thread thread = new Thread(r, "async-miss-" + missThreadCount.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        }
+        this.flushExecutor = Executors.newFixedThreadPool(storageProperties.getFlushParallelism());
+        AtomicInteger refreshThreadCount = new AtomicInteger();
+        this.refreshExecutor = new ThreadPoolExecutor(storageProperties.getFlushRefreshThreads(),
+                storageProperties.getFlushRefreshThreads(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(storageProperties.getFlushRefreshQueueCapacity()), r -> {
+                    Thread thread = new Thread(r, "flush-refresh-" + refreshThreadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        if (missExecutor != null) {
+            missExecutor.shutdown();
+        }
+        flushExecutor.shutdown();
+        refreshExecutor.shutdown();
     }
 
     /**
@@ -67,14 +154,332 @@ public class ImageService {
      * @return Requested image
      */
     public byte[] getImage(String type, String filename) {
-        if (!isTypeSupported(type)) {
-            String msg = "No predefined type: " + type;
-            dbLog.info(msg);
-            log.info(msg);
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, msg);
+        validateType(type);
+        return getAndStoreS3(type, filename);
+    }
+
+    /**
+     * Return an image to the user without buffering it, when it is already stored.
+     * Images on the local disk are served from the file, images that are small enough for the cache
+     * are read into memory and cached, larger images are streamed straight from S3.
+     *
+     * @param type     Definition type
+     * @param filename File path
+     * @return Requested image content
+     */
+    public ImageContent getImageContent(String type, String filename) {
+        validateType(type);
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = OUTCOME_ERROR;
+
+        try {
+            ImageContent content = imageCache.getContent(type, filename);
+            if (content != null) {
+                outcome = OUTCOME_HIT;
+            } else {
+                content = loadImageContent(type, filename);
+                if (content != null) {
+                    outcome = OUTCOME_MISS;
+                } else {
+                    content = renderMissing(type, filename);
+                    outcome = OUTCOME_RENDER;
+                }
+            }
+
+            meterRegistry.summary("image.bytes", "type", type.toLowerCase()).record(content.getContentLength());
+            return content;
+        } finally {
+            sample.stop(meterRegistry.timer("image.requests", "type", type.toLowerCase(), "outcome", outcome));
         }
+    }
 
-        return getAndStoreS3(type, filename);
+    /**
+     * Load an image that is not in the memory cache from the pending uploads, the disk or S3
+     *
+     * @return The image content, or null if it has to be rendered
+     */
+    private ImageContent loadImageContent(String type, String filename) {
+        String s3Filepath = directoryStrategy.getDirectoryStrategy(type, filename);
+        byte[] pending = writeBehindService.getPending(s3Filepath);
+        if (pending != null) {
+            return ImageContent.of(pending);
+        }
+
+        ImageContent onDisk = diskCache.get(s3Filepath);
+        if (onDisk != null) {
+            return onDisk;
+        }
+
+        try {
+            ImageContent content = readStored(type, filename, storageService::open);
+            if (content == null) {
+                return null;
+            }
+
+            // files from the filesystem storage are local already and are not copied to the disk cache
+            if (!imageCache.isCacheable(content.getContentLength())) {
+                return diskCache.isEnabled() && content.isStreamed() ? putOnDisk(type, filename, content) : content;
+            }
+
+            ImageContent buffered = ImageContent.of(content.toByteArray(), content.getETag(),
+                    content.getLastModified());
+            imageCache.put(type, filename, buffered);
+            diskCache.put(s3Filepath, buffered);
+            return buffered;
+        } catch (AmazonS3Exception e) {
+            log.info("File not found in S3: {}", filename);
+            dbLog.info("File not found in S3: " + filename);
+        } catch (IOException e) {
+            log.error("Failed to get file from S3: {}", e.getMessage());
+            log.debug("Failed to get file from S3", e);
+            dbLog.error("Failed to get file from S3");
+        }
+
+        return null;
+    }
+
+    /**
+     * Get the validators of a stored image without downloading it,
+     * from the caches or with a HEAD request to S3
+     *
+     * @param type     Definition type
+     * @param filename File path
+     * @return Image content without a body, or null if the image is not stored yet
+     */
+    public ImageContent getImageValidator(String type, String filename) {
+        validateType(type);
+
+        ImageContent cached = imageCache.getContent(type, filename);
+        if (cached != null) {
+            return cached;
+        }
+
+        String s3Filepath = directoryStrategy.getDirectoryStrategy(type, filename);
+        byte[] pending = writeBehindService.getPending(s3Filepath);
+        if (pending != null) {
+            return ImageContent.of(pending);
+        }
+
+        ImageContent onDisk = diskCache.stat(s3Filepath);
+        if (onDisk != null) {
+            return onDisk;
+        }
+
+        try {
+            return readStored(type, filename, storageService::stat);
+        } catch (AmazonS3Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Return a range of a stored image, e.g. to resume a download.
+     * Images that are cached are sliced, otherwise only the bytes of the range are read from storage.
+     *
+     * @param type     Definition type
+     * @param filename File path
+     * @param start    First byte of the range
+     * @param end      Last byte of the range, inclusive
+     * @return Content of the range, or null if the image is not stored
+     */
+    public ImageContent getImageRange(String type, String filename, long start, long end) {
+        validateType(type);
+
+        ImageContent cached = imageCache.getContent(type, filename);
+        if (cached != null) {
+            return cached.slice(start, end);
+        }
+
+        String s3Filepath = directoryStrategy.getDirectoryStrategy(type, filename);
+        byte[] pending = writeBehindService.getPending(s3Filepath);
+        if (pending != null) {
+            return ImageContent.of(pending).slice(start, end);
+        }
+
+        ImageContent onDisk = diskCache.get(s3Filepath);
+        if (onDisk != null) {
+            return onDisk.slice(start, end);
+        }
+
+        try {
+            return readStored(type, filename, path -> storageService.open(path, start, end));
+        } catch (AmazonS3Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Return an image to the user without holding a thread while it is downloaded from or uploaded to S3.
+     * Images missing from S3 are rendered on a thread of a separate pool with a bounded queue,
+     * misses that do not fit in the queue are rejected with 503 like renders on the synchronous path.
+     *
+     * @param type     Definition type
+     * @param filename File path
+     * @return Future of the requested image content, in memory or on the local disk
+     */
+    public CompletableFuture<ImageContent> getImageAsync(String type, String filename) {
+        if (asyncStorageService == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Async storage is not enabled");
+        }
+        validateType(type);
+
+        ImageContent cached = imageCache.getContent(type, filename);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        String s3Filepath = directoryStrategy.getDirectoryStrategy(type, filename);
+        byte[] pending = writeBehindService.getPending(s3Filepath);
+        if (pending != null) {
+            return CompletableFuture.completedFuture(ImageContent.of(pending));
+        }
+
+        ImageContent onDisk = diskCache.get(s3Filepath);
+        if (onDisk != null) {
+            return CompletableFuture.completedFuture(onDisk);
+        }
+
+        return asyncInFlight.executeAsync(getKey(type, filename), () -> loadAsync(type, filename));
+    }
+
+    /**
+     * Download a stored image like {@link #readStored} does, or render it when it is not stored
+     */
+    private CompletableFuture<ImageContent> loadAsync(String type, String filename) {
+        String writePath = directoryStrategy.getDirectoryStrategy(type, filename);
+        List<String> paths = new ArrayList<>();
+        Set<String> verified = new HashSet<>();
+        for (String path : directoryStrategy.getReadPaths(type, filename)) {
+            if (existenceIndex.mightExist(path)) {
+                paths.add(path);
+            } else if (isVerified(path, writePath)) {
+                paths.add(path);
+                verified.add(path);
+            }
+        }
+        if (paths.isEmpty()) {
+            return renderMissingAsync(type, filename);
+        }
+
+        return downloadStored(paths, 0, verified)
+                .thenApply(image -> {
+                    ImageContent content = ImageContent.of(image);
+                    imageCache.put(type, filename, content);
+                    diskCache.put(directoryStrategy.getDirectoryStrategy(type, filename), content);
+                    return content;
+                })
+                .exceptionallyCompose(e -> {
+                    if (asyncStorageService.isNotFound(e)) {
+                        log.info("File not found in S3: {}", filename);
+                        dbLog.info("File not found in S3: " + filename);
+                    } else {
+                        log.error("Failed to get file from S3: {}", e.getMessage());
+                        log.debug("Failed to get file from S3", e);
+                        dbLog.error("Failed to get file from S3");
+                    }
+
+                    return renderMissingAsync(type, filename);
+                });
+    }
+
+    /**
+     * Render a missing image on the miss pool and store it without holding a thread during the upload
+     */
+    private CompletableFuture<ImageContent> renderMissingAsync(String type, String filename) {
+        CompletableFuture<byte[]> rendered;
+        try {
+            rendered = CompletableFuture.supplyAsync(() -> render(type, filename), missExecutor);
+        } catch (RejectedExecutionException e) {
+            meterRegistry.counter("render.rejected", "reason", "miss_queue_full").increment();
+            log.warn("Async miss queue is full, rejecting request");
+            return CompletableFuture.failedFuture(new ServiceOverloadedException("Async miss queue is full",
+                    renderService.getRetryAfterSeconds()));
+        }
+
+        return rendered.thenCompose(image -> storeImageAsync(type, filename, image).thenApply(x -> {
+            imageCache.put(type, filename, image);
+            return ImageContent.of(image);
+        }));
+    }
+
+    /**
+     * Download an image from the first of the paths it is stored under
+     *
+     * @param verified The paths the existence index ruled out, which are added to it when the image is found
+     */
+    private CompletableFuture<byte[]> downloadStored(List<String> paths, int index, Set<String> verified) {
+        String path = paths.get(index);
+        CompletableFuture<byte[]> download = asyncStorageService.download(path);
+        if (verified.contains(path)) {
+            download = download.thenApply(image -> {
+                existenceIndex.addMissed(path);
+                return image;
+            });
+        }
+        if (index + 1 == paths.size()) {
+            return download;
+        }
+
+        return download.exceptionallyCompose(e -> asyncStorageService.isNotFound(e)
+                ? downloadStored(paths, index + 1, verified) : CompletableFuture.failedFuture(e));
+    }
+
+    /**
+     * Read an image from the first of the read paths of the directory strategy it is stored under,
+     * paths the existence index rules out are not requested, except for the write path when negatives are verified
+     *
+     * @return The result of the reader, or null if the image is definitely not stored
+     * @throws AmazonS3Exception When the image is not found under any of the paths
+     */
+    private <T> T readStored(String type, String filename, Function<String, T> reader) {
+        String writePath = directoryStrategy.getDirectoryStrategy(type, filename);
+        AmazonS3Exception notFound = null;
+        for (String path : directoryStrategy.getReadPaths(type, filename)) {
+            boolean ruledOut = !existenceIndex.mightExist(path);
+            if (ruledOut && !isVerified(path, writePath)) {
+                continue;
+            }
+
+            try {
+                T result = reader.apply(path);
+                if (ruledOut) {
+                    existenceIndex.addMissed(path);
+                }
+                return result;
+            } catch (AmazonS3Exception e) {
+                notFound = e;
+            }
+        }
+
+        if (notFound != null) {
+            throw notFound;
+        }
+        return null;
+    }
+
+    /**
+     * Check whether a path the existence index rules out is requested anyway: the write path is when negatives
+     * are verified, because another node may have stored the image since the last listing
+     */
+    private boolean isVerified(String path, String writePath) {
+        return existenceIndex.isVerifyNegatives() && path.equals(writePath);
+    }
+
+    /**
+     * Write a large image streamed from S3 to the disk and serve it from the file,
+     * when the disk write fails the image is streamed from S3 again
+     */
+    private ImageContent putOnDisk(String type, String filename, ImageContent content) {
+        ImageContent onDisk = diskCache.putStream(directoryStrategy.getDirectoryStrategy(type, filename), content);
+        return onDisk != null ? onDisk : readStored(type, filename, storageService::open);
+    }
+
+    private ImageContent renderMissing(String type, String filename) {
+        return ImageContent.of(inFlight.execute(getKey(type, filename), () -> {
+            byte[] image = renderAndStore(type, filename);
+            imageCache.put(type, filename, image);
+            return image;
+        }));
     }
 
     /**
@@ -84,9 +489,29 @@ public class ImageService {
      */
     public byte[] getImageFromS3(String type, String filename) {
         String s3Filepath = directoryStrategy.getDirectoryStrategy(type, filename);
+        byte[] pending = writeBehindService.getPending(s3Filepath);
+        if (pending != null) {
+            return pending;
+        }
+
+        ImageContent onDisk = diskCache.get(s3Filepath);
+        if (onDisk != null) {
+            try {
+                return onDisk.toByteArray();
+            } catch (IOException e) {
+                log.debug("Failed to read file from disk cache", e);
+            }
+        }
+
         try {
-            InputStream is = s3Service.download(s3Filepath);
-            return IOUtils.toByteArray(is);
+            InputStream is = readStored(type, filename, storageService::download);
+            if (is == null) {
+                return new byte[0];
+            }
+
+            byte[] image = IOUtils.toByteArray(is);
+            diskCache.put(s3Filepath, image);
+            return image;
         } catch (AmazonS3Exception e) {
             log.info("File not found in S3: {}", filename);
             dbLog.info("File not found in S3: " + filename);
@@ -99,92 +524,394 @@ public class ImageService {
         return new byte[0];
     }
 
+    /**
+     * Get image from S3, or render and store it when it is missing.
+     * Concurrent calls for the same type and file share a single fetch/render/store.
+     *
+     * @param type     Definition type
+     * @param filename File path
+     * @return Requested image
+     */
     public byte[] getAndStoreS3(String type, String filename) {
+        byte[] cached = imageCache.get(type, filename);
+        if (cached != null) {
+            return cached;
+        }
+
+        return inFlight.execute(getKey(type, filename), () -> loadAndStoreS3(type, filename));
+    }
+
+    private byte[] loadAndStoreS3(String type, String filename) {
         byte [] image = getImageFromS3(type, filename);
 
         if (image.length == 0) {
-            if (type.equalsIgnoreCase(DEFAULT_IMAGE_TYPE)) {
-                image = getImageFromSource(filename);
-            } else {
-                image = getAndStoreS3(DEFAULT_IMAGE_TYPE, filename);
-                image = resizeImage(type, image);
-            }
+            image = renderAndStore(type, filename);
+        }
+
+        imageCache.put(type, filename, image);
+        return image;
+    }
+
+    private byte[] renderAndStore(String type, String filename) {
+        byte[] image = render(type, filename);
+
+        // found image in source - store it
+        storeImage(type, filename, image);
+        return image;
+    }
 
-            // found image in source - store it
-            storeImage(type, filename, image);
+    /**
+     * Get the original from the source, or render a type from the stored original
+     */
+    private byte[] render(String type, String filename) {
+        if (type.equalsIgnoreCase(DEFAULT_IMAGE_TYPE)) {
+            return getImageFromSource(filename);
+        }
+        if (renderService.isFanOutEnabled()) {
+            return renderFanOut(type, filename, getAndStoreS3(DEFAULT_IMAGE_TYPE, filename));
+        }
+        return renderService.render(getAndStoreS3(DEFAULT_IMAGE_TYPE, filename), getImageType(type));
+    }
+
+    /**
+     * Render the requested type together with the other fan-out types that were not rendered before.
+     * The other types are cached and stored in the background, and a type that fails to render
+     * does not fail the requested one.
+     */
+    private byte[] renderFanOut(String type, String filename, byte[] original) {
+        String requestedType = type.toLowerCase();
+        Map<String, ImageType> types = new HashMap<>();
+        types.put(requestedType, getImageType(requestedType));
 
-            // check that storing worked correctly
-            if (!Arrays.equals(image, getImageFromS3(type, filename))) {
-                log.error("Failed to get image from S3");
-                dbLog.error("Failed to get image from S3");
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Image not found on source");
+        for (String fanOutType : renderService.getFanOutTypes()) {
+            if (fanOutType.equals("*")) {
+                imageTypes.forEach(types::putIfAbsent);
+            } else if (imageTypes.containsKey(fanOutType)) {
+                types.putIfAbsent(fanOutType, imageTypes.get(fanOutType));
             }
         }
+        types.remove(DEFAULT_IMAGE_TYPE);
+        types.keySet().removeIf(x -> !x.equals(requestedType) && isRendered(x, filename));
+
+        Map<String, byte[]> rendered = renderService.render(original, types);
+        rendered.forEach((x, image) -> {
+            if (!x.equals(requestedType)) {
+                storeSibling(x, filename, image);
+            }
+        });
 
+        byte[] image = rendered.get(requestedType);
+        if (image == null) {
+            // logged by the render service
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Failed to resize image");
+        }
         return image;
     }
 
+    /**
+     * Store a fan-out type with write-behind, so the request does not wait for it.
+     * When the write-behind queue is full the type is not stored, it is rendered again when it is requested.
+     */
+    private void storeSibling(String type, String filename, byte[] image) {
+        String s3Filepath = directoryStrategy.getDirectoryStrategy(type, filename);
+        imageCache.put(type, filename, image);
+        if (writeBehindService.submit(s3Filepath, image, getContentType(type, image))) {
+            diskCache.put(s3Filepath, image);
+            existenceIndex.add(s3Filepath);
+        }
+    }
+
+    /**
+     * Get the predefined image types
+     *
+     * @return Definition types by name
+     */
+    public Map<String, ImageType> getImageTypes() {
+        return imageTypes;
+    }
+
+    /**
+     * Get the width variants of all types, e.g. thumbnail-w200
+     *
+     * @return Definition types by variant name
+     */
+    public Map<String, ImageType> getWidthVariants() {
+        return variants;
+    }
+
+    /**
+     * Get the variant of a type for a requested width, snapped to the nearest allowed width of the type.
+     * A bounded set of widths keeps the number of stored and cached images per reference small.
+     *
+     * @param type  Definition type
+     * @param width Requested width in device pixels, or null
+     * @return Name of the width variant, or the type itself when it has no other width for the request
+     */
+    public String getVariant(String type, Integer width) {
+        ImageType imageType = imageTypes.get(type.toLowerCase());
+        if (width == null || width <= 0 || imageType == null) {
+            return type;
+        }
+
+        int bucket = imageType.getBucket(width);
+        return bucket == imageType.getWidth() ? type : type.toLowerCase() + WIDTH_SEPARATOR + bucket;
+    }
+
+    /**
+     * Check whether a type can be rendered in other widths
+     *
+     * @param type Definition type
+     * @return true if the type has allowed widths
+     */
+    public boolean isResponsive(String type) {
+        ImageType imageType = imageTypes.get(type.toLowerCase());
+        return imageType != null && !imageType.getWidths().isEmpty();
+    }
+
+    /**
+     * Get the definition of a type or of a width variant
+     */
+    private ImageType getImageType(String type) {
+        String name = type.toLowerCase();
+        ImageType imageType = imageTypes.get(name);
+        return imageType != null ? imageType : variants.get(name);
+    }
+
+    /**
+     * Get the width variants of a type, or of all types for the original
+     */
+    private Map<String, ImageType> getVariants(String type) {
+        String prefix = type.toLowerCase() + WIDTH_SEPARATOR;
+        Map<String, ImageType> result = new HashMap<>();
+        variants.forEach((name, imageType) -> {
+            if (type.equalsIgnoreCase(DEFAULT_IMAGE_TYPE) || name.startsWith(prefix)) {
+                result.put(name, imageType);
+            }
+        });
+        return result;
+    }
+
     /**
      * Get image from source
      *
      * @return byte[] representing image file from source
      */
     public byte[] getImageFromSource(String filename) {
-        HttpGet request = new HttpGet(String.join("/", sourceProperties.getRootUrl(), filename));
-
-        try (CloseableHttpResponse response = httpClient.execute(request)) {
-            int statusCode = response.getStatusLine().getStatusCode();
-            if (statusCode == 404 || statusCode > 500) {
-                dbLog.error("Source URL responded with: " + statusCode);
-                log.error("Source URL responded with: {}", statusCode);
-                throw new ResponseStatusException(HttpStatus.NOT_FOUND,
-                        "Source server error: failed to get image from source");
-            }
-            return response.getEntity().getContent().readAllBytes();
-        } catch (IOException e) {
-            dbLog.info("Failed to get image from source");
-            log.info("Failed to get image from source");
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Image not found on source");
+        return sourceService.getImage(filename);
+    }
+
+    /**
+     * Flush an image from S3. Flushing an original makes the source service of this node forget that the source
+     * reported it missing, other nodes keep reporting it missing until their negative cache entry expires.
+     *
+     * @param type     Definition type
+     * @param filename File path
+     * @param mode     Flush mode, or null for the configured mode
+     * @throws ServiceOverloadedException if the refresh queue is full
+     * @throws ResponseStatusException    if the image could not be deleted
+     */
+    public void flushImage(String type, String filename, FlushModeEnum mode) {
+        String reason = flushImages(type, List.of(filename), mode).get(filename);
+        if (REFRESH_QUEUE_FULL.equals(reason)) {
+            throw new ServiceOverloadedException(reason, renderService.getRetryAfterSeconds());
+        }
+        if (reason != null) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Failed to flush image: " + reason);
         }
     }
 
     /**
-     * Flush an image from S3
+     * Drop an image from the caches and cancel its pending upload, e.g. because it is replaced in storage
+     * by pre-generation
      *
      * @param type     Definition type
      * @param filename File path
      */
-    public void flushImage(String type, String filename) {
-        if (!type.equalsIgnoreCase(DEFAULT_IMAGE_TYPE)) {
-            deleteImage(type, filename);
-            return;
+    public void invalidateImage(String type, String filename) {
+        invalidate(type, filename);
+    }
+
+    /**
+     * Flush images in bulk, by deleting or refreshing them
+     *
+     * @param type      Definition type
+     * @param filenames File paths
+     * @param mode      Flush mode, or null for the configured mode
+     * @return The file paths that could not be flushed, with the reason
+     */
+    public Map<String, String> flushImages(String type, Collection<String> filenames, FlushModeEnum mode) {
+        FlushModeEnum flushMode = mode != null ? mode : storageProperties.getFlushMode();
+        return flushMode == FlushModeEnum.REFRESH ? refreshImages(type, filenames) : deleteImages(type, filenames);
+    }
+
+    /**
+     * Delete images from S3 in bulk. The files are deleted with multi-object deletes,
+     * batches run in parallel up to the configured parallelism.
+     * The caches are invalidated before and after the delete, a request in between may have read
+     * the old image from S3 and cached it again.
+     */
+    private Map<String, String> deleteImages(String type, Collection<String> filenames) {
+        Set<String> types = new HashSet<>(getVariants(type).keySet());
+        if (type.equalsIgnoreCase(DEFAULT_IMAGE_TYPE)) {
+            types.addAll(imageTypes.keySet());
+        } else {
+            types.add(type);
+        }
+        Map<String, String> filenamesByPath = new LinkedHashMap<>();
+
+        for (String filename : filenames) {
+            if (type.equalsIgnoreCase(DEFAULT_IMAGE_TYPE)) {
+                sourceService.forgetMissing(filename);
+            }
+
+            for (String x : types) {
+                invalidate(x, filename);
+                directoryStrategy.getReadPaths(x, filename).forEach(path -> filenamesByPath.put(path, filename));
+            }
         }
 
-        imageTypes.keySet().forEach(x -> deleteImage(x, filename));
+        List<String> paths = new ArrayList<>(filenamesByPath.keySet());
+        List<CompletableFuture<Map<String, String>>> batches = new ArrayList<>();
+        for (int from = 0; from < paths.size(); from += FLUSH_BATCH_SIZE) {
+            List<String> batch = paths.subList(from, Math.min(paths.size(), from + FLUSH_BATCH_SIZE));
+            batches.add(paths.size() <= FLUSH_BATCH_SIZE
+                    ? CompletableFuture.completedFuture(storageService.delete(batch))
+                    : CompletableFuture.supplyAsync(() -> storageService.delete(batch), flushExecutor));
+        }
+
+        Map<String, String> failed = new LinkedHashMap<>();
+        batches.forEach(x -> x.join().forEach((path, reason) -> failed.putIfAbsent(filenamesByPath.get(path), reason)));
+        filenames.forEach(filename -> types.forEach(x -> invalidate(x, filename)));
+
+        if (!failed.isEmpty()) {
+            String msg = "Failed to delete files";
+            dbLog.error(msg);
+            log.error(msg + " of {} references: {}", failed.size(), failed.values().iterator().next());
+        }
+        return failed;
     }
 
-    private void deleteImage(String type, String filename) {
-        String s3Filepath = directoryStrategy.getDirectoryStrategy(type, filename);
+    /**
+     * Queue images to be rendered again in the background, while the current ones keep being served.
+     * A refreshed image replaces the current one in storage and in the caches when it is ready.
+     */
+    private Map<String, String> refreshImages(String type, Collection<String> filenames) {
+        Map<String, String> failed = new LinkedHashMap<>();
+        for (String filename : filenames) {
+            String key = getKey(type, filename);
+            if (!refreshing.add(key)) {
+                continue;
+            }
+
+            try {
+                refreshExecutor.execute(() -> {
+                    try {
+                        refreshImage(type, filename);
+                    } finally {
+                        refreshing.remove(key);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                refreshing.remove(key);
+                failed.put(filename, REFRESH_QUEUE_FULL);
+            }
+        }
+        return failed;
+    }
 
+    private void refreshImage(String type, String filename) {
         try {
-            s3Service.delete(s3Filepath);
-        } catch (AmazonS3Exception e) {
-            String msg = "Failed to delete file";
+            Map<String, ImageType> types = new HashMap<>();
+            byte[] original;
+
+            if (type.equalsIgnoreCase(DEFAULT_IMAGE_TYPE)) {
+                sourceService.forgetMissing(filename);
+                original = getImageFromSource(filename);
+                storeImage(DEFAULT_IMAGE_TYPE, filename, original);
+                imageCache.put(DEFAULT_IMAGE_TYPE, filename, original);
+                types.putAll(imageTypes);
+                types.remove(DEFAULT_IMAGE_TYPE);
+            } else {
+                original = getAndStoreS3(DEFAULT_IMAGE_TYPE, filename);
+                types.put(type.toLowerCase(), getImageType(type));
+            }
+            // only width variants that were requested before, the others are rendered when they are requested
+            getVariants(type).forEach((name, imageType) -> {
+                if (isRendered(name, filename)) {
+                    types.put(name, imageType);
+                }
+            });
+
+            renderService.render(original, types).forEach((x, image) -> {
+                storeImage(x, filename, image);
+                imageCache.put(x, filename, image);
+            });
+        } catch (RuntimeException e) {
+            String msg = "Failed to refresh image";
             dbLog.error(msg);
-            log.error(msg + ": {}", e.getMessage());
+            log.error(msg + " {}: {}", filename, e.getMessage());
             log.debug(msg, e);
         }
     }
 
+    /**
+     * Check whether an image was rendered before, from the caches or with a HEAD request to storage.
+     * Paths the existence index rules out are not requested.
+     */
+    private boolean isRendered(String type, String filename) {
+        if (imageCache.contains(type, filename)) {
+            return true;
+        }
+
+        String s3Filepath = directoryStrategy.getDirectoryStrategy(type, filename);
+        if (writeBehindService.getPending(s3Filepath) != null || diskCache.stat(s3Filepath) != null) {
+            return true;
+        }
+
+        try {
+            return readStored(type, filename, storageService::stat) != null;
+        } catch (AmazonS3Exception e) {
+            return false;
+        }
+    }
+
+    private void invalidate(String type, String filename) {
+        String s3Filepath = directoryStrategy.getDirectoryStrategy(type, filename);
+        imageCache.invalidate(type, filename);
+        diskCache.invalidate(s3Filepath);
+        writeBehindService.cancel(s3Filepath);
+        asyncUploads.remove(s3Filepath);
+    }
+
+    private void validateType(String type) {
+        if (!isTypeSupported(type)) {
+            String msg = "No predefined type: " + type;
+            dbLog.info(msg);
+            log.info(msg);
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, msg);
+        }
+    }
+
+    private String getKey(String type, String filename) {
+        return String.join("/", type.toLowerCase(), filename);
+    }
+
     private boolean isTypeSupported(String type) {
-        return imageTypes.keySet().stream().anyMatch(x -> x.equalsIgnoreCase(type));
+        return getImageType(type) != null;
     }
 
     private void storeImage(String type, String filename, byte[] image){
         String s3Filepath = directoryStrategy.getDirectoryStrategy(type, filename);
+        diskCache.put(s3Filepath, image);
+        existenceIndex.add(s3Filepath);
+        String contentType = getContentType(type, image);
+        if (writeBehindService.isEnabled() && writeBehindService.submit(s3Filepath, image, contentType)) {
+            return;
+        }
+
         try {
-            s3Service.upload(s3Filepath, new ByteArrayInputStream(image));
-        } catch (AmazonS3Exception e) {
+            storageService.upload(s3Filepath, image, contentType);
+        } catch (AmazonS3Exception | IOException e) {
             dbLog.error("Failed to save image to S3");
             log.error("Failed to save image to S3: {}", e.getMessage());
             log.debug("Failed to save image to S3", e);
@@ -192,83 +919,109 @@ public class ImageService {
         }
     }
 
-    private byte[] resizeImage(String type, byte[] image) {
-        ImageType imageType = imageTypes.get(type.toLowerCase());
-
-        try {
-            Image resultingImage = getResultingImage(imageType, toBufferedImage(image));
-
-            BufferedImage target = new BufferedImage(imageType.getWidth(), imageType.getHeight(),
-                    BufferedImage.TYPE_INT_RGB);
-
-            int widthBuffer = Math.abs((resultingImage.getWidth(null) - target.getWidth()) / 2);
-            int heightBuffer = Math.abs((resultingImage.getHeight(null) - target.getHeight()) / 2);
+    /**
+     * Store an image with the non-blocking storage service, or in the background when write-behind is enabled.
+     * An image that is flushed while it is uploaded is deleted again, like a cancelled write-behind upload.
+     */
+    private CompletableFuture<Void> storeImageAsync(String type, String filename, byte[] image) {
+        String s3Filepath = directoryStrategy.getDirectoryStrategy(type, filename);
+        diskCache.put(s3Filepath, image);
+        existenceIndex.add(s3Filepath);
+        String contentType = getContentType(type, image);
+        if (writeBehindService.isEnabled() && writeBehindService.submit(s3Filepath, image, contentType)) {
+            return CompletableFuture.completedFuture(null);
+        }
 
-            Graphics2D graphics = target.createGraphics();
+        asyncUploads.put(s3Filepath, image);
+        return asyncStorageService.upload(s3Filepath, image, contentType)
+                .handle((x, e) -> {
+                    boolean flushed = !asyncUploads.remove(s3Filepath, image);
+                    if (e != null) {
+                        dbLog.error("Failed to save image to S3");
+                        log.error("Failed to save image to S3: {}", e.getMessage());
+                        log.debug("Failed to save image to S3", e);
+                        throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Failed to store image on S3");
+                    }
+                    if (flushed) {
+                        asyncStorageService.delete(s3Filepath).exceptionally(deleteFailure -> {
+                            dbLog.error("Failed to delete flushed upload from S3");
+                            log.error("Failed to delete flushed upload {} from S3: {}", s3Filepath,
+                                    deleteFailure.getMessage());
+                            return null;
+                        });
+                    }
+                    return null;
+                });
+    }
 
-            switch (imageType.getScaleType()) {
-                case CROP -> graphics.drawImage(resultingImage, 0, 0, target.getWidth(), target.getHeight(),
-                        widthBuffer, heightBuffer, resultingImage.getWidth(null) - widthBuffer,
-                        resultingImage.getHeight(null) - heightBuffer, null);
-                case FILL -> {
-                    graphics.drawImage(resultingImage, widthBuffer, heightBuffer,
-                            target.getWidth() - widthBuffer, target.getHeight() - heightBuffer, 0, 0,
-                            resultingImage.getWidth(null), resultingImage.getHeight(null), null);
-                    graphics.setColor(Color.decode(imageType.getFillColor()));
+    /**
+     * Get the MIME type of an image, originals are stored as they came from the source and are typed by content
+     *
+     * @param type  Definition type
+     * @param image The image
+     * @return MIME type of the image
+     */
+    public String getContentType(String type, byte[] image) {
+        ImageTypeEnum imageType = getImageType(type).getType();
+        return type.equalsIgnoreCase(DEFAULT_IMAGE_TYPE)
+                ? ImageTypeEnum.getMimeType(image, imageType) : imageType.getMimeType();
+    }
 
-                    if (widthBuffer == 0) {
-                        graphics.fillRect(0, 0, target.getWidth(), heightBuffer);
-                        graphics.fillRect(0, target.getHeight() - heightBuffer, target.getWidth(), target.getHeight());
-                    } else {
-                        graphics.fillRect(0, 0, widthBuffer, target.getHeight());
-                        graphics.fillRect(target.getWidth() - widthBuffer, 0, target.getWidth(), target.getHeight());
-                    }
-                }
-                case SKEW -> graphics.drawImage(resultingImage, 0, 0, target.getWidth(), target.getHeight(), 0, 0,
-                        resultingImage.getWidth(null), resultingImage.getHeight(null), null);
-            }
+    /**
+     * Get the MIME type of image content, originals are typed by the MIME type they were stored with,
+     * which streamed content carries, or else by their first bytes. When neither is known,
+     * the definition of the original type is used.
+     *
+     * @param type    Definition type
+     * @param content The image content
+     * @return MIME type of the image
+     */
+    public String getContentType(String type, ImageContent content) {
+        ImageTypeEnum imageType = getImageType(type).getType();
+        if (!type.equalsIgnoreCase(DEFAULT_IMAGE_TYPE)) {
+            return imageType.getMimeType();
+        }
+        if (content.getContentType() != null) {
+            return content.getContentType();
+        }
 
-            return toByteArray(target, imageType.getType().toString());
+        try {
+            byte[] head = content.peek(ImageTypeEnum.SIGNATURE_LENGTH);
+            return head != null ? ImageTypeEnum.getMimeType(head, imageType) : imageType.getMimeType();
         } catch (IOException e) {
-            String msg = "Failed to resize image";
-            log.error(msg + ": {}", e.getMessage());
-            log.debug(msg, e);
-            dbLog.error(msg);
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, msg);
+            log.debug("Failed to read the first bytes of {}", type, e);
+            return imageType.getMimeType();
         }
     }
 
-    public Image getResultingImage(ImageType imageType, BufferedImage origin) {
-        Image resultingImage;
+    @Autowired
+    public void setSourceService(SourceService sourceService) {
+        this.sourceService = sourceService;
+    }
 
-        boolean wider = (imageType.getWidth() / (double) imageType.getHeight()) >= (origin.getWidth() / (double) origin.getHeight());
-        boolean crop = imageType.getScaleType().equals(ScaleTypeEnum.CROP);
-        boolean fill = imageType.getScaleType().equals(ScaleTypeEnum.FILL);
+    @Autowired
+    public void setStorageService(StorageService storageService) {
+        this.storageService = storageService;
+    }
 
-        if ((crop && wider) || (fill && !wider)) {
-            // CROP && WIDER - keep the ratio and match the width
-            // FILL && HIGHER - keep the ratio and match the width
-            resultingImage = origin.getScaledInstance(imageType.getWidth(), -1, Image.SCALE_DEFAULT);
-        } else if (crop || fill) {
-            // CROP && HIGHER - keep the ratio and match the height
-            // FILL && WIDER - keep the ratio and match the height
-            resultingImage = origin.getScaledInstance(-1, imageType.getHeight(), Image.SCALE_DEFAULT);
-        } else {
-            // SKEW - fits the original image to the requested width and height
-            resultingImage = origin.getScaledInstance(imageType.getWidth(), imageType.getHeight(), Image.SCALE_DEFAULT);
-        }
+    @Autowired(required = false)
+    public void setAsyncStorageService(AsyncStorageService asyncStorageService) {
+        this.asyncStorageService = asyncStorageService;
+    }
 
-        return resultingImage;
+    @Autowired
+    public void setStorageProperties(StorageProperties storageProperties) {
+        this.storageProperties = storageProperties;
     }
 
     @Autowired
-    public void setSourceProperties(SourceProperties sourceProperties) {
-        this.sourceProperties = sourceProperties;
+    public void setWriteBehindService(WriteBehindService writeBehindService) {
+        this.writeBehindService = writeBehindService;
     }
 
     @Autowired
-    public void setS3Service(S3Service s3Service) {
-        this.s3Service = s3Service;
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
     }
 
     @Autowired
@@ -277,7 +1030,27 @@ public class ImageService {
     }
 
     @Autowired
-    public void setDirectoryStrategy(S3DirectoryStrategy directoryStrategy) {
+    public void setImageCache(ImageCache imageCache) {
+        this.imageCache = imageCache;
+    }
+
+    @Autowired
+    public void setDiskCache(DiskCache diskCache) {
+        this.diskCache = diskCache;
+    }
+
+    @Autowired
+    public void setExistenceIndex(ExistenceIndex existenceIndex) {
+        this.existenceIndex = existenceIndex;
+    }
+
+    @Autowired
+    public void setDirectoryStrategy(DirectoryStrategy directoryStrategy) {
         this.directoryStrategy = directoryStrategy;
     }
+
+    @Autowired
+    public void setRenderService(RenderService renderService) {
+        this.renderService = renderService;
+    }
 }
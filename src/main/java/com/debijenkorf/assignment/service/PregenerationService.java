@@ -0,0 +1,406 @@
+package com.debijenkorf.assignment.service;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.debijenkorf.assignment.app.configuration.PregenerationProperties;
+import com.debijenkorf.assignment.cache.ExistenceIndex;
+import com.debijenkorf.assignment.data.ImageType;
+import com.debijenkorf.assignment.strategy.DirectoryStrategy;
+import com.debijenkorf.assignment.strategy.ResizeEngine;
+import com.debijenkorf.assignment.util.ImageUtil;
+import com.debijenkorf.assignment.util.PipelineStage;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.debijenkorf.assignment.service.ImageService.DEFAULT_IMAGE_TYPE;
+
+/**
+ * A service responsible for rendering all image types of a list of references into storage ahead of traffic,
+ * including the width variants that are served for client hints.
+ * References go through a pipeline of stages (fetch, decode, render, encode, upload), each with its own threads
+ * and a bounded queue. Variants that are already stored are skipped, and finished references are written
+ * to a journal, so an interrupted run can be resumed. The journal is deleted when a run finishes,
+ * so a later run renders the references again, e.g. after they were flushed.
+ */
+@Service
+@Slf4j
+public class PregenerationService {
+    private PregenerationProperties pregenerationProperties;
+    private ImageService imageService;
+    private SourceService sourceService;
+    private StorageService storageService;
+    private DirectoryStrategy directoryStrategy;
+    private ExistenceIndex existenceIndex;
+    private ResizeEngine resizeEngine;
+    private ImageEncoder imageEncoder;
+    private DbLogger dbLog;
+
+    private final ExecutorService jobExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "pregenerate");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile Job job;
+
+    @PreDestroy
+    public void preDestroy() {
+        jobExecutor.shutdownNow();
+    }
+
+    /**
+     * Start pre-generating in the background
+     *
+     * @param references File paths
+     * @param resume     Skip the references that are in the journal of a previous run
+     * @return Status of the run
+     */
+    public synchronized Map<String, Object> start(List<String> references, boolean resume) {
+        Job started = newJob(references);
+        jobExecutor.execute(() -> run(started, references, resume));
+        return getStatus();
+    }
+
+    /**
+     * Pre-generate and wait until all references are done
+     *
+     * @param references File paths
+     * @param resume     Skip the references that are in the journal of a previous run
+     * @return Status of the run
+     */
+    public Map<String, Object> run(List<String> references, boolean resume) {
+        Job started;
+        synchronized (this) {
+            started = newJob(references);
+        }
+        run(started, references, resume);
+        return getStatus();
+    }
+
+    /**
+     * Get the progress of the current or last run, with the throughput of every stage
+     *
+     * @return Pre-generation status
+     */
+    public Map<String, Object> getStatus() {
+        Job current = job;
+        Map<String, Object> status = new LinkedHashMap<>();
+        if (current == null) {
+            status.put("running", false);
+            return status;
+        }
+
+        long end = current.finishedAt > 0 ? current.finishedAt : System.currentTimeMillis();
+        status.put("running", current.finishedAt == 0);
+        status.put("references", current.references);
+        status.put("skipped", current.skipped.get());
+        status.put("completed", current.completed.get());
+        status.put("failed", current.failed.get());
+        status.put("elapsedMs", end - current.startedAt);
+
+        Map<String, Object> stages = new LinkedHashMap<>();
+        current.stages.forEach(x -> stages.put(x.getName(), x.getStatistics()));
+        status.put("stages", stages);
+        return status;
+    }
+
+    private Job newJob(List<String> references) {
+        if (job != null && job.finishedAt == 0) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Pre-generation is already running");
+        }
+
+        this.job = new Job(references.size());
+        return job;
+    }
+
+    private void run(Job job, List<String> references, boolean resume) {
+        Path journalPath = Paths.get(pregenerationProperties.getJournalPath());
+        int capacity = pregenerationProperties.getQueueCapacity();
+        boolean finished = false;
+
+        try (BufferedWriter journal = openJournal(journalPath, resume)) {
+            Set<String> done = resume ? readJournal(journalPath) : Set.of();
+
+            PipelineStage<Item> upload = job.stage(new PipelineStage<>("upload",
+                    pregenerationProperties.getUploadThreads(), capacity,
+                    item -> {
+                        upload(item);
+                        finish(journal, item.reference, job.completed);
+                    }, (item, e) -> failed(job, item, e)));
+            PipelineStage<Item> encode = job.stage(new PipelineStage<>("encode",
+                    pregenerationProperties.getEncodeThreads(), capacity,
+                    item -> {
+                        encode(item);
+                        upload.put(item);
+                    }, (item, e) -> failed(job, item, e)));
+            PipelineStage<Item> render = job.stage(new PipelineStage<>("render",
+                    pregenerationProperties.getRenderThreads(), capacity,
+                    item -> {
+                        resize(item);
+                        encode.put(item);
+                    }, (item, e) -> failed(job, item, e)));
+            PipelineStage<Item> decode = job.stage(new PipelineStage<>("decode",
+                    pregenerationProperties.getDecodeThreads(), capacity,
+                    item -> {
+                        item.decoded = ImageUtil.toBufferedImage(item.original, item.types.values());
+                        render.put(item);
+                    }, (item, e) -> failed(job, item, e)));
+            PipelineStage<Item> fetch = job.stage(new PipelineStage<>("fetch",
+                    pregenerationProperties.getFetchThreads(), capacity,
+                    item -> {
+                        if (!fetch(item)) {
+                            finish(journal, item.reference, job.skipped);
+                        } else {
+                            decode.put(item);
+                        }
+                    }, (item, e) -> failed(job, item, e)));
+
+            // the stages are started and closed from the first to the last
+            List<PipelineStage<Item>> stages = List.of(fetch, decode, render, encode, upload);
+            stages.forEach(PipelineStage::start);
+
+            for (String reference : references) {
+                if (done.contains(reference)) {
+                    job.skipped.incrementAndGet();
+                } else {
+                    fetch.put(new Item(reference));
+                }
+            }
+
+            for (PipelineStage<Item> stage : stages) {
+                stage.close();
+            }
+            finished = true;
+        } catch (IOException e) {
+            log.error("Failed to open pre-generation journal: {}", e.getMessage());
+            log.debug("Failed to open pre-generation journal", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            // the journal is only kept to resume an interrupted run
+            if (finished) {
+                deleteJournal(journalPath);
+            }
+            job.finishedAt = System.currentTimeMillis();
+            log.info("Pre-generation finished: {}", getStatus());
+        }
+    }
+
+    /**
+     * Find the types and width variants that are not stored yet and get the original for them,
+     * the original is only downloaded when there is something to render
+     *
+     * @return false if all variants are stored already
+     */
+    private boolean fetch(Item item) {
+        Map<String, ImageType> types = new LinkedHashMap<>(imageService.getImageTypes());
+        types.putAll(imageService.getWidthVariants());
+        types.forEach((name, imageType) -> {
+            if (!name.equals(DEFAULT_IMAGE_TYPE) && !isSkipped(name, item.reference)) {
+                item.types.put(name, imageType);
+            }
+        });
+        if (item.types.isEmpty()) {
+            return false;
+        }
+
+        byte[] original = imageService.getImageFromS3(DEFAULT_IMAGE_TYPE, item.reference);
+        if (original.length == 0) {
+            original = sourceService.getImage(item.reference);
+            item.storeOriginal = true;
+        }
+
+        item.original = original;
+        return true;
+    }
+
+    private void resize(Item item) {
+        item.types.forEach((name, imageType) -> item.resized.put(name, resizeEngine.resize(item.decoded, imageType)));
+        item.decoded = null;
+    }
+
+    private void encode(Item item) throws IOException {
+        for (Map.Entry<String, BufferedImage> resized : item.resized.entrySet()) {
+            item.encoded.put(resized.getKey(), imageEncoder.encode(resized.getValue(),
+                    item.types.get(resized.getKey())));
+        }
+        item.resized.clear();
+    }
+
+    private void upload(Item item) throws IOException {
+        if (item.storeOriginal) {
+            item.encoded.put(DEFAULT_IMAGE_TYPE, item.original);
+        }
+
+        for (Map.Entry<String, byte[]> encoded : item.encoded.entrySet()) {
+            String path = directoryStrategy.getDirectoryStrategy(encoded.getKey(), item.reference);
+            // a pending upload must not overwrite the new image, and a request during the upload
+            // may have cached the old one again
+            imageService.invalidateImage(encoded.getKey(), item.reference);
+            storageService.upload(path, encoded.getValue(),
+                    imageService.getContentType(encoded.getKey(), encoded.getValue()));
+            existenceIndex.add(path);
+            imageService.invalidateImage(encoded.getKey(), item.reference);
+        }
+    }
+
+    /**
+     * Check whether a variant is stored, on any of the paths it is read from like the image service does
+     */
+    private boolean isSkipped(String type, String reference) {
+        if (!pregenerationProperties.isSkipExisting()) {
+            return false;
+        }
+
+        String writePath = directoryStrategy.getDirectoryStrategy(type, reference);
+        for (String path : directoryStrategy.getReadPaths(type, reference)) {
+            boolean ruledOut = !existenceIndex.mightExist(path);
+            if (ruledOut && !(existenceIndex.isVerifyNegatives() && path.equals(writePath))) {
+                continue;
+            }
+
+            try {
+                storageService.stat(path);
+                if (ruledOut) {
+                    existenceIndex.addMissed(path);
+                }
+                return true;
+            } catch (AmazonS3Exception e) {
+                // not stored on this path
+            }
+        }
+        return false;
+    }
+
+    private void finish(BufferedWriter journal, String reference, AtomicLong counter) throws IOException {
+        synchronized (journal) {
+            journal.write(reference);
+            journal.newLine();
+            journal.flush();
+        }
+        counter.incrementAndGet();
+    }
+
+    private void failed(Job job, Item item, Exception e) {
+        job.failed.incrementAndGet();
+        dbLog.error("Failed to pre-generate image");
+        log.error("Failed to pre-generate {}: {}", item.reference, e.getMessage());
+    }
+
+    private BufferedWriter openJournal(Path journalPath, boolean resume) throws IOException {
+        return Files.newBufferedWriter(journalPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                resume ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private Set<String> readJournal(Path journalPath) throws IOException {
+        return new HashSet<>(Files.readAllLines(journalPath));
+    }
+
+    private void deleteJournal(Path journalPath) {
+        try {
+            Files.deleteIfExists(journalPath);
+        } catch (IOException e) {
+            log.error("Failed to delete pre-generation journal: {}", e.getMessage());
+            log.debug("Failed to delete pre-generation journal", e);
+        }
+    }
+
+    @Autowired
+    public void setPregenerationProperties(PregenerationProperties pregenerationProperties) {
+        this.pregenerationProperties = pregenerationProperties;
+    }
+
+    @Autowired
+    public void setImageService(ImageService imageService) {
+        this.imageService = imageService;
+    }
+
+    @Autowired
+    public void setSourceService(SourceService sourceService) {
+        this.sourceService = sourceService;
+    }
+
+    @Autowired
+    public void setStorageService(StorageService storageService) {
+        this.storageService = storageService;
+    }
+
+    @Autowired
+    public void setDirectoryStrategy(DirectoryStrategy directoryStrategy) {
+        this.directoryStrategy = directoryStrategy;
+    }
+
+    @Autowired
+    public void setExistenceIndex(ExistenceIndex existenceIndex) {
+        this.existenceIndex = existenceIndex;
+    }
+
+    @Autowired
+    public void setResizeEngine(ResizeEngine resizeEngine) {
+        this.resizeEngine = resizeEngine;
+    }
+
+    @Autowired
+    public void setImageEncoder(ImageEncoder imageEncoder) {
+        this.imageEncoder = imageEncoder;
+    }
+
+    @Autowired
+    public void setDbLog(DbLogger dbLog) {
+        this.dbLog = dbLog;
+    }
+
+    private static class Job {
+        private final int references;
+        private final long startedAt = System.currentTimeMillis();
+        private volatile long finishedAt;
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final List<PipelineStage<Item>> stages = new CopyOnWriteArrayList<>();
+
+        private Job(int references) {
+            this.references = references;
+        }
+
+        // stages are registered from the last to the first, they are reported in pipeline order
+        private PipelineStage<Item> stage(PipelineStage<Item> stage) {
+            stages.add(0, stage);
+            return stage;
+        }
+    }
+
+    private static class Item {
+        private final String reference;
+        private final Map<String, ImageType> types = new HashMap<>();
+        private final Map<String, BufferedImage> resized = new HashMap<>();
+        private final Map<String, byte[]> encoded = new HashMap<>();
+        private byte[] original;
+        private BufferedImage decoded;
+        private boolean storeOriginal;
+
+        private Item(String reference) {
+            this.reference = reference;
+        }
+    }
+}
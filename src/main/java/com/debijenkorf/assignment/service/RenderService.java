@@ -0,0 +1,284 @@
+package com.debijenkorf.assignment.service;
+
+import com.debijenkorf.assignment.app.configuration.RenderProperties;
+import com.debijenkorf.assignment.data.ImageType;
+import com.debijenkorf.assignment.exception.ServiceOverloadedException;
+import com.debijenkorf.assignment.strategy.ResizeEngine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.debijenkorf.assignment.util.ImageUtil.toBufferedImage;
+
+/**
+ * A service responsible for rendering image types from an original.
+ * Rendering runs on a dedicated pool with a bounded queue, requests that do not fit in the queue
+ * or miss their deadline are rejected with 503 instead of piling up on the request threads.
+ * Decoding, resizing and encoding can not be interrupted, so a render that missed its deadline keeps its
+ * pool thread, and counts against the capacity, until the running stage finishes. The deadline is checked
+ * between the stages, so the remaining stages of an abandoned render are skipped.
+ */
+@Service
+@Slf4j
+public class RenderService {
+    private static final String RENDER_ERROR = "Failed to resize image";
+
+    private RenderProperties renderProperties;
+    private ResizeEngine resizeEngine;
+    private ImageEncoder imageEncoder;
+    private DbLogger dbLog;
+    private ThreadPoolExecutor renderPool;
+    private ForkJoinPool fanOutPool;
+    private MeterRegistry meterRegistry;
+
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong abandoned = new AtomicLong();
+
+    @PostConstruct
+    public void postConstruct() {
+        int threads = renderProperties.getExecutorThreads() > 0
+                ? renderProperties.getExecutorThreads() : Runtime.getRuntime().availableProcessors();
+        AtomicInteger threadCount = new AtomicInteger();
+
+        this.renderPool = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(renderProperties.getExecutorQueueCapacity()), r -> {
+                    Thread thread = new Thread(r, "render-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.fanOutPool = new ForkJoinPool(renderProperties.getFanOutParallelism());
+
+        Gauge.builder("render.queue.depth", renderPool, x -> x.getQueue().size()).register(meterRegistry);
+        Gauge.builder("render.active", renderPool, ThreadPoolExecutor::getActiveCount).register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        renderPool.shutdown();
+        fanOutPool.shutdown();
+    }
+
+    /**
+     * Render a single image type from an original
+     *
+     * @param original  The original image
+     * @param imageType Definition type
+     * @return The rendered image
+     */
+    public byte[] render(byte[] original, ImageType imageType) {
+        return execute(deadline -> {
+            checkDeadline(deadline, "decode");
+            return render(decode(() -> toBufferedImage(original, imageType)), imageType, deadline);
+        });
+    }
+
+    /**
+     * Render several image types from an original, which is decoded only once.
+     * The image types are rendered in parallel from the shared decoded image. A type that fails to render
+     * is left out of the result, so it does not fail the other types.
+     *
+     * @param original   The original image
+     * @param imageTypes Definition types by name
+     * @return The rendered images by name, without the types that failed
+     */
+    public Map<String, byte[]> render(byte[] original, Map<String, ImageType> imageTypes) {
+        return execute(deadline -> {
+            checkDeadline(deadline, "decode");
+            BufferedImage decoded = decode(() -> toBufferedImage(original, imageTypes.values()));
+
+            Map<String, byte[]> rendered = new ConcurrentHashMap<>();
+            fanOutPool.submit(() -> imageTypes.entrySet().parallelStream().forEach(x -> {
+                try {
+                    rendered.put(x.getKey(), render(decoded, x.getValue(), deadline));
+                } catch (DeadlineExceededException e) {
+                    throw e;
+                } catch (IOException | RuntimeException e) {
+                    log.error(RENDER_ERROR + " {}: {}", x.getKey(), e.getMessage());
+                    log.debug(RENDER_ERROR, e);
+                    dbLog.error(RENDER_ERROR);
+                }
+            })).get();
+            return rendered;
+        });
+    }
+
+    /**
+     * Get the queue depth and rejection counters of the render pool
+     *
+     * @return Render pool statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("threads", renderPool.getMaximumPoolSize());
+        statistics.put("active", renderPool.getActiveCount());
+        statistics.put("queueDepth", renderPool.getQueue().size());
+        statistics.put("completed", renderPool.getCompletedTaskCount());
+        statistics.put("rejected", rejected.get());
+        statistics.put("timedOut", timedOut.get());
+        statistics.put("abandoned", abandoned.get());
+        return statistics;
+    }
+
+    /**
+     * Get the number of seconds rejected clients are asked to wait before retrying
+     *
+     * @return Retry-After in seconds
+     */
+    public long getRetryAfterSeconds() {
+        return renderProperties.getRetryAfterSeconds();
+    }
+
+    public boolean isFanOutEnabled() {
+        return getFanOutTypes().length > 0;
+    }
+
+    /**
+     * Get the image types to render together, "*" stands for all image types
+     *
+     * @return Names of the image types
+     */
+    public String[] getFanOutTypes() {
+        return renderProperties.getFanOutTypes().stream()
+                .map(String::trim)
+                .filter(x -> !x.isEmpty())
+                .map(String::toLowerCase)
+                .toArray(String[]::new);
+    }
+
+    /**
+     * Run a render on the render pool and wait for it until the deadline, which is passed to the render
+     */
+    private <T> T execute(RenderTask<T> task) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(renderProperties.getExecutorTimeoutMs());
+        Future<T> future;
+        try {
+            future = renderPool.submit(() -> task.call(deadline));
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            meterRegistry.counter("render.rejected", "reason", "queue_full").increment();
+            log.warn("Render queue is full, rejecting request");
+            throw new ServiceOverloadedException("Render queue is full", renderProperties.getRetryAfterSeconds());
+        }
+
+        try {
+            return future.get(renderProperties.getExecutorTimeoutMs(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw renderTimedOut();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof ExecutionException nested ? nested.getCause() : e.getCause();
+            if (cause instanceof DeadlineExceededException) {
+                throw renderTimedOut();
+            }
+            if (cause instanceof ResponseStatusException responseStatusException) {
+                throw responseStatusException;
+            }
+            throw renderFailed(cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw renderFailed(e);
+        }
+    }
+
+    private ServiceOverloadedException renderTimedOut() {
+        timedOut.incrementAndGet();
+        meterRegistry.counter("render.rejected", "reason", "timeout").increment();
+        log.warn("Render did not finish within {} ms", renderProperties.getExecutorTimeoutMs());
+        return new ServiceOverloadedException("Render timed out", renderProperties.getRetryAfterSeconds());
+    }
+
+    private BufferedImage decode(Callable<BufferedImage> decoder) throws Exception {
+        return meterRegistry.timer("render.decode").recordCallable(decoder);
+    }
+
+    private byte[] render(BufferedImage decoded, ImageType imageType, long deadline) throws IOException {
+        checkDeadline(deadline, "resize");
+        Timer.Sample sample = Timer.start(meterRegistry);
+        BufferedImage resized = resizeEngine.resize(decoded, imageType);
+        sample.stop(meterRegistry.timer("render.resize", "scale", imageType.getScaleType().toString(),
+                "engine", resizeEngine.getClass().getSimpleName()));
+
+        checkDeadline(deadline, "encode");
+        return imageEncoder.encode(resized, imageType);
+    }
+
+    /**
+     * Abandon a render before the given stage when nobody waits for it anymore
+     */
+    private void checkDeadline(long deadline, String stage) {
+        if (System.nanoTime() - deadline > 0) {
+            abandoned.incrementAndGet();
+            meterRegistry.counter("render.abandoned", "stage", stage).increment();
+            throw new DeadlineExceededException(stage);
+        }
+    }
+
+    private ResponseStatusException renderFailed(Throwable e) {
+        log.error(RENDER_ERROR + ": {}", e.getMessage());
+        log.debug(RENDER_ERROR, e);
+        dbLog.error(RENDER_ERROR);
+        return new ResponseStatusException(HttpStatus.NOT_FOUND, RENDER_ERROR);
+    }
+
+    @Autowired
+    public void setRenderProperties(RenderProperties renderProperties) {
+        this.renderProperties = renderProperties;
+    }
+
+    @Autowired
+    public void setResizeEngine(ResizeEngine resizeEngine) {
+        this.resizeEngine = resizeEngine;
+    }
+
+    @Autowired
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Autowired
+    public void setImageEncoder(ImageEncoder imageEncoder) {
+        this.imageEncoder = imageEncoder;
+    }
+
+    @Autowired
+    public void setDbLog(DbLogger dbLog) {
+        this.dbLog = dbLog;
+    }
+
+    @FunctionalInterface
+    private interface RenderTask<T> {
+        T call(long deadline) throws Exception;
+    }
+
+    private static class DeadlineExceededException extends RuntimeException {
+        DeadlineExceededException(String stage) {
+            super("Render deadline passed before " + stage);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.debijenkorf.assignment.service;
+
+import com.debijenkorf.assignment.app.configuration.S3Properties;
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import software.amazon.awssdk.auth.credentials.AnonymousCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.AwsCredentialsProvider;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.BytesWrapper;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
+import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * A service responsible for the non-blocking communication with S3.
+ * Requests share a pool of connections on a small number of event loop threads.
+ */
+@Service
+// only with the S3 storage, the async path must read the same storage as the rest of the service
+@ConditionalOnExpression("${storage.async.enabled:false} and '${storage.type:s3}' == 's3'")
+@Slf4j
+public class S3AsyncService implements AsyncStorageService {
+    private S3Properties s3Properties;
+    private StorageProperties storageProperties;
+    private S3AsyncClient s3client;
+
+    /**
+     * Establish the async S3 Client after the bean has initialized
+     */
+    @PostConstruct
+    public void postConstruct() {
+        S3AsyncClientBuilder builder = S3AsyncClient.builder()
+                .credentialsProvider(getCredentialsProvider())
+                .region(Region.of(s3Properties.getRegion()))
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(storageProperties.getAsyncMaxConcurrency())
+                        .maxPendingConnectionAcquires(storageProperties.getAsyncMaxPendingAcquires())
+                        .connectionAcquisitionTimeout(Duration.ofMillis(storageProperties.getAsyncAcquireTimeoutMs())));
+
+        if (StringUtils.hasText(s3Properties.getEndpoint())) {
+            // S3-compatible stand-in, e.g. for local testing
+            builder.endpointOverride(URI.create(s3Properties.getEndpoint())).forcePathStyle(true);
+        }
+
+        this.s3client = builder.build();
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        s3client.close();
+    }
+
+    private AwsCredentialsProvider getCredentialsProvider() {
+        if (!StringUtils.hasText(s3Properties.getAccessKey())) {
+            return AnonymousCredentialsProvider.create();
+        }
+
+        return StaticCredentialsProvider.create(
+                AwsBasicCredentials.create(s3Properties.getAccessKey(), s3Properties.getSecretKey()));
+    }
+
+    /**
+     * Download file from S3 bucket
+     *
+     * @param path The file path we want to download
+     * @return Future of the file content
+     */
+    @Override
+    public CompletableFuture<byte[]> download(String path) {
+        return s3client.getObject(x -> x.bucket(s3Properties.getBucket()).key(path),
+                        AsyncResponseTransformer.toBytes())
+                .thenApply(BytesWrapper::asByteArrayUnsafe);
+    }
+
+    /**
+     * Upload file to S3 bucket, verified by checksum like {@link S3Service#upload(String, byte[], String)}.
+     * S3 rejects the upload if the content does not match the Content-MD5 header,
+     * and the MD5 is kept in the object metadata as the ETag of the file.
+     *
+     * @param path        The location we want to upload the file to
+     * @param data        The file content we want to upload
+     * @param contentType MIME type of the content
+     * @return Future completing when the file is stored
+     */
+    @Override
+    public CompletableFuture<Void> upload(String path, byte[] data, String contentType) {
+        byte[] md5 = DigestUtils.md5(data);
+        return s3client.putObject(x -> x.bucket(s3Properties.getBucket())
+                                .key(path)
+                                .contentLength((long) data.length)
+                                .contentType(contentType)
+                                .contentMD5(Base64.getEncoder().encodeToString(md5))
+                                .metadata(Map.of(S3Service.MD5_METADATA, Hex.encodeHexString(md5))),
+                        AsyncRequestBody.fromBytes(data))
+                .thenApply(x -> null);
+    }
+
+    /**
+     * Delete file from S3 bucket
+     *
+     * @param path The file path we want to delete
+     * @return Future completing when the file is deleted
+     */
+    @Override
+    public CompletableFuture<Void> delete(String path) {
+        return s3client.deleteObject(x -> x.bucket(s3Properties.getBucket()).key(path))
+                .thenApply(x -> null);
+    }
+
+    /**
+     * Check whether a failed request failed because the file does not exist
+     *
+     * @param e The failure of a request
+     * @return true if the file was not found
+     */
+    @Override
+    public boolean isNotFound(Throwable e) {
+        Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+        return cause instanceof NoSuchKeyException
+                || (cause instanceof S3Exception s3Exception && s3Exception.statusCode() == 404);
+    }
+
+    @Autowired
+    public void setS3Properties(S3Properties s3Properties) {
+        this.s3Properties = s3Properties;
+    }
+
+    @Autowired
+    public void setStorageProperties(StorageProperties storageProperties) {
+        this.storageProperties = storageProperties;
+    }
+}
@@ -1,42 +1,119 @@
 package com.debijenkorf.assignment.service;
 
+import com.amazonaws.SdkClientException;
 import com.amazonaws.auth.AWSCredentials;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest;
+import com.amazonaws.services.s3.model.DeleteObjectsRequest.KeyVersion;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.MultiObjectDeleteException;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
 import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.debijenkorf.assignment.app.configuration.S3Properties;
+import com.debijenkorf.assignment.data.ImageContent;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * A service responsible for the communication with S3
  */
 @Service
+@ConditionalOnProperty(name = "storage.type", havingValue = "s3", matchIfMissing = true)
 @Slf4j
 public class S3Service implements StorageService {
+    // the maximum number of keys of a single DeleteObjects request
+    private static final int DELETE_BATCH_SIZE = 1000;
+    private static final String REQUEST_TIMER = "storage.requests";
+    // S3 rejects parts smaller than this, except for the last part
+    private static final int MIN_PART_SIZE_BYTES = 5 * 1024 * 1024;
+    // MD5 of the whole content, S3 does not give multipart uploads the MD5 as ETag
+    static final String MD5_METADATA = "md5";
+
     private S3Properties s3Properties;
     private DbLogger dbLog;
     private AmazonS3 s3client;
+    private ExecutorService multipartExecutor;
+    private MeterRegistry meterRegistry;
 
     /**
      * Establish the S3 Client connection after the bean has initialized
      */
     @PostConstruct
     public void postConstruct() {
+        if (s3Properties.getMultipartPartSizeBytes() < MIN_PART_SIZE_BYTES) {
+            throw new IllegalStateException("aws.multipart.part-size-bytes must be at least " + MIN_PART_SIZE_BYTES
+                    + " bytes, S3 rejects smaller parts: " + s3Properties.getMultipartPartSizeBytes());
+        }
+
         AWSCredentials credentials = new BasicAWSCredentials(s3Properties.getAccessKey(), s3Properties.getSecretKey());
-        this.s3client = AmazonS3ClientBuilder
+        AmazonS3ClientBuilder builder = AmazonS3ClientBuilder
                 .standard()
-                .withCredentials(new AWSStaticCredentialsProvider(credentials))
-                .withRegion(s3Properties.getRegion())
-                .build();
+                .withCredentials(new AWSStaticCredentialsProvider(credentials));
+
+        if (StringUtils.hasText(s3Properties.getEndpoint())) {
+            // S3-compatible stand-in, e.g. for local testing
+            builder.withEndpointConfiguration(new EndpointConfiguration(s3Properties.getEndpoint(),
+                            s3Properties.getRegion()))
+                    .withPathStyleAccessEnabled(true);
+        } else {
+            builder.withRegion(s3Properties.getRegion());
+        }
+
+        this.s3client = builder.build();
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.multipartExecutor = Executors.newFixedThreadPool(s3Properties.getMultipartConcurrency(), r -> {
+            Thread thread = new Thread(r, "s3-multipart-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void preDestroy() {
+        multipartExecutor.shutdown();
     }
 
     /**
@@ -47,21 +124,147 @@ public class S3Service implements StorageService {
      */
     @Override
     public InputStream download(String path) {
-        S3Object object = s3client.getObject(s3Properties.getBucket(), path);
+        S3Object object = timed("get", () -> s3client.getObject(s3Properties.getBucket(), path));
         return object.getObjectContent();
     }
 
     /**
-     * Upload file to S3 bucket
+     * Open file from S3 bucket for streaming, the content length and type are taken from the object metadata
+     *
+     * @param path The file path we want to download
+     * @return Content of the file we have opened
+     */
+    @Override
+    public ImageContent open(String path) {
+        S3Object object = timed("get", () -> s3client.getObject(s3Properties.getBucket(), path));
+        ObjectMetadata metadata = object.getObjectMetadata();
+        return ImageContent.of(object.getObjectContent(), metadata.getContentLength(), getETag(metadata),
+                getLastModified(metadata), metadata.getContentType());
+    }
+
+    /**
+     * Open a range of a file from S3 bucket, only the bytes of the range are transferred
+     *
+     * @param path  The file path we want to download
+     * @param start First byte of the range
+     * @param end   Last byte of the range, inclusive
+     * @return Content of the range, with the validators of the whole file
+     */
+    @Override
+    public ImageContent open(String path, long start, long end) {
+        GetObjectRequest request = new GetObjectRequest(s3Properties.getBucket(), path).withRange(start, end);
+        S3Object object = timed("get_range", () -> s3client.getObject(request));
+        ObjectMetadata metadata = object.getObjectMetadata();
+        return ImageContent.of(object.getObjectContent(), metadata.getContentLength(), getETag(metadata),
+                getLastModified(metadata), metadata.getContentType());
+    }
+
+    /**
+     * Get the size and validators of a file in S3 bucket, without downloading it
+     *
+     * @param path The file path
+     * @return Content of the file without a body
+     */
+    @Override
+    public ImageContent stat(String path) {
+        ObjectMetadata metadata = timed("head", () -> s3client.getObjectMetadata(s3Properties.getBucket(), path));
+        return ImageContent.ofMetadata(metadata.getContentLength(), getETag(metadata), getLastModified(metadata),
+                metadata.getContentType());
+    }
+
+    /**
+     * Upload file to S3 bucket, verified by checksum.
+     * S3 rejects the upload if the content does not match the Content-MD5 header,
+     * and the returned ETag is compared with the MD5 of the data.
+     * Files above the multipart threshold are uploaded in parts, see {@link #uploadMultipart}.
+     * The MD5 is also kept in the object metadata, so every file gets the MD5 of its content as ETag,
+     * like the images in the caches.
      *
-     * @param path The location we want to upload the file to
-     * @param is   InputStream that we want to upload
+     * @param path        The location we want to upload the file to
+     * @param data        The file content we want to upload
+     * @param contentType MIME type of the content
+     * @throws IOException When the ETag of the stored object does not match the data
      */
     @Override
-    public void upload(String path, InputStream is) {
+    public void upload(String path, byte[] data, String contentType) throws IOException {
+        byte[] md5 = DigestUtils.md5(data);
+        if (data.length >= s3Properties.getMultipartThresholdBytes()) {
+            uploadMultipart(path, data, contentType, Hex.encodeHexString(md5));
+            return;
+        }
+
+        ObjectMetadata metaData = new ObjectMetadata();
+        metaData.setContentLength(data.length);
+        metaData.setContentType(contentType);
+        metaData.setContentMD5(Base64.getEncoder().encodeToString(md5));
+        metaData.addUserMetadata(MD5_METADATA, Hex.encodeHexString(md5));
+
+        PutObjectRequest putOb = new PutObjectRequest(s3Properties.getBucket(), path,
+                new ByteArrayInputStream(data), metaData);
+        PutObjectResult result = timed("put", () -> s3client.putObject(putOb));
+        meterRegistry.summary("storage.put.bytes").record(data.length);
+
+        if (result.getETag() != null && !result.getETag().equalsIgnoreCase(Hex.encodeHexString(md5))) {
+            meterRegistry.counter("storage.verification", "outcome", "mismatch").increment();
+            throw new IOException("Checksum mismatch for " + path + ": " + result.getETag());
+        }
+        meterRegistry.counter("storage.verification", "outcome", "match").increment();
+    }
+
+    /**
+     * Upload file to S3 bucket in parts, which are sent in parallel on the multipart pool.
+     * Every part is verified by its own Content-MD5, the upload is aborted when a part fails.
+     */
+    private void uploadMultipart(String path, byte[] data, String contentType, String md5Hex) throws IOException {
+        String bucket = s3Properties.getBucket();
         ObjectMetadata metaData = new ObjectMetadata();
-        PutObjectRequest putOb = new PutObjectRequest(s3Properties.getBucket(), path, is, metaData);
-        s3client.putObject(putOb);
+        metaData.setContentType(contentType);
+        metaData.addUserMetadata(MD5_METADATA, md5Hex);
+        String uploadId = timed("multipart_initiate", () -> s3client.initiateMultipartUpload(
+                new InitiateMultipartUploadRequest(bucket, path, metaData))).getUploadId();
+
+        int partSize = s3Properties.getMultipartPartSizeBytes();
+        List<CompletableFuture<PartETag>> parts = new ArrayList<>();
+        for (int offset = 0, partNumber = 1; offset < data.length; offset += partSize, partNumber++) {
+            int length = Math.min(partSize, data.length - offset);
+            MessageDigest md5 = DigestUtils.getMd5Digest();
+            md5.update(data, offset, length);
+
+            UploadPartRequest request = new UploadPartRequest()
+                    .withBucketName(bucket)
+                    .withKey(path)
+                    .withUploadId(uploadId)
+                    .withPartNumber(partNumber)
+                    .withPartSize(length)
+                    .withInputStream(new ByteArrayInputStream(data, offset, length))
+                    .withMD5Digest(Base64.getEncoder().encodeToString(md5.digest()));
+            parts.add(CompletableFuture.supplyAsync(
+                    () -> timed("multipart_part", () -> s3client.uploadPart(request)).getPartETag(), multipartExecutor));
+        }
+
+        try {
+            CompletableFuture.allOf(parts.toArray(CompletableFuture[]::new)).join();
+            List<PartETag> partETags = parts.stream().map(CompletableFuture::join).toList();
+            timed("multipart_complete", () -> s3client.completeMultipartUpload(
+                    new CompleteMultipartUploadRequest(bucket, path, uploadId, partETags)));
+            meterRegistry.summary("storage.put.bytes").record(data.length);
+        } catch (CompletionException | SdkClientException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            abortMultipart(path, uploadId);
+            throw new IOException("Multipart upload failed for " + path + ": " + cause.getMessage(), cause);
+        }
+    }
+
+    private void abortMultipart(String path, String uploadId) {
+        try {
+            timed("multipart_abort", () -> {
+                s3client.abortMultipartUpload(new AbortMultipartUploadRequest(s3Properties.getBucket(), path, uploadId));
+                return null;
+            });
+        } catch (SdkClientException e) {
+            log.error("Failed to abort multipart upload of {}: {}", path, e.getMessage());
+            log.debug("Failed to abort multipart upload", e);
+        }
     }
 
     /**
@@ -71,7 +274,93 @@ public class S3Service implements StorageService {
      */
     @Override
     public void delete(String path) {
-        s3client.deleteObject(s3Properties.getBucket(), path);
+        timed("delete", () -> {
+            s3client.deleteObject(s3Properties.getBucket(), path);
+            return null;
+        });
+    }
+
+    /**
+     * Delete files from S3 bucket with as few DeleteObjects requests as possible
+     *
+     * @param paths The file paths we want to delete
+     * @return The paths that could not be deleted, with the reason
+     */
+    @Override
+    public Map<String, String> delete(Collection<String> paths) {
+        Map<String, String> failed = new LinkedHashMap<>();
+        List<String> keys = new ArrayList<>(paths);
+
+        for (int from = 0; from < keys.size(); from += DELETE_BATCH_SIZE) {
+            List<String> batch = keys.subList(from, Math.min(keys.size(), from + DELETE_BATCH_SIZE));
+            DeleteObjectsRequest request = new DeleteObjectsRequest(s3Properties.getBucket())
+                    .withKeys(batch.stream().map(KeyVersion::new).toList())
+                    .withQuiet(true);
+
+            try {
+                timed("delete_batch", () -> s3client.deleteObjects(request));
+            } catch (MultiObjectDeleteException e) {
+                e.getErrors().forEach(x -> failed.put(x.getKey(), x.getMessage()));
+            } catch (SdkClientException e) {
+                batch.forEach(x -> failed.put(x, e.getMessage()));
+            }
+        }
+
+        return failed;
+    }
+
+    /**
+     * List the files in S3 bucket, page by page
+     *
+     * @param prefix   The path prefix of the files
+     * @param consumer Receives the path of every file
+     */
+    @Override
+    public void list(String prefix, Consumer<String> consumer) {
+        ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(s3Properties.getBucket())
+                .withPrefix(prefix);
+
+        ListObjectsV2Result result;
+        do {
+            result = timed("list", () -> s3client.listObjectsV2(request));
+            for (S3ObjectSummary summary : result.getObjectSummaries()) {
+                consumer.accept(summary.getKey());
+            }
+            request.setContinuationToken(result.getNextContinuationToken());
+        } while (result.isTruncated());
+    }
+
+    /**
+     * Run a request to S3 and record its latency, tagged by operation and outcome
+     */
+    private <T> T timed(String operation, Supplier<T> request) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            T result = request.get();
+            outcome = "success";
+            return result;
+        } catch (AmazonS3Exception e) {
+            outcome = e.getStatusCode() == 404 ? "not_found" : "error";
+            throw e;
+        } finally {
+            sample.stop(meterRegistry.timer(REQUEST_TIMER, "operation", operation, "outcome", outcome));
+        }
+    }
+
+    /**
+     * Get the MD5 of the content from the metadata, or else the ETag S3 gave the file,
+     * which is the MD5 for files that were not uploaded in parts
+     */
+    private String getETag(ObjectMetadata metadata) {
+        String md5 = metadata.getUserMetaDataOf(MD5_METADATA);
+        return md5 != null ? md5 : metadata.getETag();
+    }
+
+    private long getLastModified(ObjectMetadata metadata) {
+        return metadata.getLastModified() != null
+                ? metadata.getLastModified().getTime() : ImageContent.UNKNOWN_LAST_MODIFIED;
     }
 
     @Autowired
@@ -79,6 +368,11 @@ public class S3Service implements StorageService {
         this.s3Properties = s3Properties;
     }
 
+    @Autowired
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @Autowired
     public void setDbLog(DbLogger dbLog) {
         this.dbLog = dbLog;
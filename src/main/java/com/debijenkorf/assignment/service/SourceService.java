@@ -0,0 +1,233 @@
+package com.debijenkorf.assignment.service;
+
+import com.debijenkorf.assignment.app.configuration.SourceProperties;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHost;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A service responsible for the communication with the image source.
+ * Requests go through a sized connection pool with keep-alive and timeouts.
+ * Images the source reported as missing are remembered for a while, so they are not requested again.
+ * The missing images are remembered per node, see {@link #forgetMissing}.
+ */
+@Service
+@Slf4j
+public class SourceService {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private SourceProperties sourceProperties;
+    private DbLogger dbLog;
+    private PoolingHttpClientConnectionManager connectionManager;
+    private CloseableHttpClient httpClient;
+    private Cache<String, Boolean> missing;
+    private MeterRegistry meterRegistry;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+    private final AtomicLong maxLatencyMs = new AtomicLong();
+    private final AtomicLong missingHits = new AtomicLong();
+
+    @PostConstruct
+    public void postConstruct() {
+        // no time to live, connections are kept while the source allows it and closed when idle too long
+        this.connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(sourceProperties.getPoolMaxTotal());
+        connectionManager.setDefaultMaxPerRoute(sourceProperties.getPoolMaxPerRoute());
+        connectionManager.setValidateAfterInactivity(1000);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(sourceProperties.getConnectTimeoutMs())
+                .setSocketTimeout(sourceProperties.getSocketTimeoutMs())
+                .setConnectionRequestTimeout(sourceProperties.getConnectionRequestTimeoutMs())
+                .build();
+
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    long keepAlive = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return keepAlive > 0 ? keepAlive : sourceProperties.getKeepAliveMs();
+                })
+                .evictIdleConnections(sourceProperties.getKeepAliveMs(), TimeUnit.MILLISECONDS)
+                .build();
+
+        this.missing = Caffeine.newBuilder()
+                .expireAfterWrite(sourceProperties.getNegativeCacheTtlMs(), TimeUnit.MILLISECONDS)
+                .maximumSize(sourceProperties.getNegativeCacheMaxSize())
+                .build();
+    }
+
+    @PreDestroy
+    public void preDestroy() throws IOException {
+        httpClient.close();
+    }
+
+    /**
+     * Get image from source
+     *
+     * @param filename File path
+     * @return byte[] representing image file from source
+     */
+    public byte[] getImage(String filename) {
+        if (missing.getIfPresent(filename) != null) {
+            missingHits.incrementAndGet();
+            meterRegistry.counter("source.known_missing").increment();
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Image not found on source");
+        }
+
+        HttpGet request = new HttpGet(String.join("/", sourceProperties.getRootUrl(), filename));
+        long start = System.nanoTime();
+        requests.incrementAndGet();
+        String outcome = "error";
+
+        try (CloseableHttpResponse response = httpClient.execute(request)) {
+            int statusCode = response.getStatusLine().getStatusCode();
+            if (statusCode < 200 || statusCode >= 300) {
+                failures.incrementAndGet();
+                // only a 404 is remembered, other failures of the source may be temporary
+                if (statusCode == 404) {
+                    missing.put(filename, Boolean.TRUE);
+                    outcome = "not_found";
+                }
+                dbLog.error("Source URL responded with: " + statusCode);
+                log.error("Source URL responded with: {}", statusCode);
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND,
+                        "Source server error: failed to get image from source");
+            }
+            byte[] image = read(response.getEntity());
+            meterRegistry.summary("source.bytes").record(image.length);
+            outcome = "success";
+            return image;
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            dbLog.info("Failed to get image from source");
+            log.info("Failed to get image from source: {}", e.getMessage());
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Image not found on source");
+        } finally {
+            long latencyNanos = System.nanoTime() - start;
+            recordLatency(TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+            meterRegistry.timer("source.requests", "outcome", outcome).record(latencyNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Forget that the source reported an image as missing, e.g. because the image was flushed.
+     * Only this node forgets it, the other nodes keep reporting the image as missing
+     * until their entry expires after source.negative-cache.ttl-ms.
+     *
+     * @param filename File path
+     */
+    public void forgetMissing(String filename) {
+        missing.invalidate(filename);
+    }
+
+    /**
+     * Get the connection pool usage and latency of the source
+     *
+     * @return Source client statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("pool", toMap(connectionManager.getTotalStats()));
+
+        URI root = URI.create(sourceProperties.getRootUrl());
+        boolean secure = "https".equalsIgnoreCase(root.getScheme());
+        int port = root.getPort() > 0 ? root.getPort() : (secure ? 443 : 80);
+        HttpHost host = new HttpHost(root.getHost(), port, root.getScheme());
+        statistics.put("route", toMap(connectionManager.getStats(new HttpRoute(host, null, secure))));
+
+        long count = requests.get();
+        statistics.put("requests", count);
+        statistics.put("failures", failures.get());
+        statistics.put("averageLatencyMs", count == 0 ? 0 : totalLatencyMs.get() / count);
+        statistics.put("maxLatencyMs", maxLatencyMs.get());
+        statistics.put("knownMissing", missing.estimatedSize());
+        statistics.put("knownMissingHits", missingHits.get());
+        return statistics;
+    }
+
+    /**
+     * Read the response body, refusing bodies above the configured size.
+     * The buffer is sized from Content-Length when the source sends it.
+     */
+    private byte[] read(HttpEntity entity) throws IOException {
+        long contentLength = entity.getContentLength();
+        int maxBytes = sourceProperties.getMaxResponseBytes();
+        if (contentLength > maxBytes) {
+            throw new IOException("Source response of " + contentLength + " bytes exceeds the limit");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : READ_BUFFER_SIZE);
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+
+        try (InputStream is = entity.getContent()) {
+            int read;
+            while ((read = is.read(buffer)) != -1) {
+                if (out.size() + read > maxBytes) {
+                    throw new IOException("Source response exceeds the limit of " + maxBytes + " bytes");
+                }
+                out.write(buffer, 0, read);
+            }
+        }
+
+        return out.toByteArray();
+    }
+
+    private void recordLatency(long latencyMs) {
+        totalLatencyMs.addAndGet(latencyMs);
+        maxLatencyMs.accumulateAndGet(latencyMs, Math::max);
+    }
+
+    private Map<String, Object> toMap(PoolStats stats) {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("leased", stats.getLeased());
+        map.put("pending", stats.getPending());
+        map.put("available", stats.getAvailable());
+        map.put("max", stats.getMax());
+        return map;
+    }
+
+    @Autowired
+    public void setSourceProperties(SourceProperties sourceProperties) {
+        this.sourceProperties = sourceProperties;
+    }
+
+    @Autowired
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Autowired
+    public void setDbLog(DbLogger dbLog) {
+        this.dbLog = dbLog;
+    }
+}
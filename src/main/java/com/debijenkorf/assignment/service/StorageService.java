@@ -1,16 +1,30 @@
 package com.debijenkorf.assignment.service;
 
+import com.debijenkorf.assignment.data.ImageContent;
 import org.springframework.retry.annotation.Backoff;
 import org.springframework.retry.annotation.Retryable;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface StorageService {
     InputStream download(String path);
 
+    ImageContent open(String path);
+
+    ImageContent open(String path, long start, long end);
+
+    ImageContent stat(String path);
+
     @Retryable(retryFor = IOException.class, maxAttempts = 1, backoff = @Backoff(delay = 200))
-    void upload(String path, InputStream is) throws IOException;
+    void upload(String path, byte[] data, String contentType) throws IOException;
 
     void delete(String path);
+
+    Map<String, String> delete(Collection<String> paths);
+
+    void list(String prefix, Consumer<String> consumer);
 }
@@ -0,0 +1,195 @@
+package com.debijenkorf.assignment.service;
+
+import com.amazonaws.SdkClientException;
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A service responsible for persisting images to storage in the background.
+ * Uploads are queued on a bounded queue and retried on failure; until an upload completes,
+ * the pending image can still be read from here. A cancelled upload is not attempted anymore,
+ * so a flush does not get undone by an upload that was still queued.
+ * The other types rendered with a fan-out are stored through here also when write-behind is disabled,
+ * so the request that rendered them does not wait for their uploads.
+ */
+@Service
+@Slf4j
+public class WriteBehindService {
+    private StorageProperties storageProperties;
+    private StorageService storageService;
+    private DbLogger dbLog;
+    private ThreadPoolExecutor executor;
+
+    private final Map<String, byte[]> pending = new ConcurrentHashMap<>();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong retried = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong cancelled = new AtomicLong();
+
+    @PostConstruct
+    public void postConstruct() {
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(storageProperties.getWriteBehindThreads(),
+                storageProperties.getWriteBehindThreads(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(storageProperties.getWriteBehindQueueCapacity()), r -> {
+                    Thread thread = new Thread(r, "write-behind-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * Finish the queued uploads before shutting down
+     */
+    @PreDestroy
+    public void preDestroy() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+            log.error("Dropping {} queued uploads on shutdown", executor.getQueue().size());
+        }
+    }
+
+    public boolean isEnabled() {
+        return storageProperties.isWriteBehindEnabled();
+    }
+
+    /**
+     * Queue an image for upload
+     *
+     * @param path        The location we want to upload the file to
+     * @param data        The file content we want to upload
+     * @param contentType MIME type of the content
+     * @return false if the queue is full and the caller has to upload the image itself
+     */
+    public boolean submit(String path, byte[] data, String contentType) {
+        pending.put(path, data);
+
+        try {
+            executor.execute(() -> upload(path, data, contentType));
+            return true;
+        } catch (RejectedExecutionException e) {
+            pending.remove(path, data);
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    /**
+     * Get an image that is queued for upload
+     *
+     * @param path The file path
+     * @return The image, or null if there is no pending upload for the path
+     */
+    public byte[] getPending(String path) {
+        return pending.get(path);
+    }
+
+    /**
+     * Cancel a pending upload, e.g. because the image was flushed. A queued upload is skipped,
+     * an upload that is in progress deletes the file again when it completes.
+     *
+     * @param path The file path
+     */
+    public void cancel(String path) {
+        pending.remove(path);
+    }
+
+    /**
+     * Get the queue depth and failure counters
+     *
+     * @return Write-behind statistics
+     */
+    public Map<String, Object> getStatistics() {
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("enabled", isEnabled());
+        statistics.put("queueDepth", executor.getQueue().size());
+        statistics.put("active", executor.getActiveCount());
+        statistics.put("completed", completed.get());
+        statistics.put("retried", retried.get());
+        statistics.put("failed", failed.get());
+        statistics.put("rejected", rejected.get());
+        statistics.put("cancelled", cancelled.get());
+        return statistics;
+    }
+
+    private void upload(String path, byte[] data, String contentType) {
+        try {
+            for (int attempt = 1; ; attempt++) {
+                // the upload was cancelled, or replaced by a newer image of the same path
+                if (pending.get(path) != data) {
+                    cancelled.incrementAndGet();
+                    return;
+                }
+
+                try {
+                    storageService.upload(path, data, contentType);
+                    if (!pending.containsKey(path)) {
+                        // cancelled while uploading, the delete of the flush may have run before the upload
+                        cancelled.incrementAndGet();
+                        deleteCancelled(path);
+                        return;
+                    }
+                    completed.incrementAndGet();
+                    return;
+                } catch (SdkClientException | IOException e) {
+                    if (attempt >= storageProperties.getWriteBehindMaxAttempts()) {
+                        failed.incrementAndGet();
+                        dbLog.error("Failed to save image to S3");
+                        log.error("Failed to save image to S3 after {} attempts: {}", attempt, e.getMessage());
+                        log.debug("Failed to save image to S3", e);
+                        return;
+                    }
+
+                    retried.incrementAndGet();
+                    Thread.sleep(storageProperties.getWriteBehindBackoffMs() * attempt);
+                }
+            }
+        } catch (InterruptedException e) {
+            failed.incrementAndGet();
+            Thread.currentThread().interrupt();
+        } finally {
+            pending.remove(path, data);
+        }
+    }
+
+    private void deleteCancelled(String path) {
+        try {
+            storageService.delete(path);
+        } catch (RuntimeException e) {
+            dbLog.error("Failed to delete cancelled upload from S3");
+            log.error("Failed to delete cancelled upload {} from S3: {}", path, e.getMessage());
+            log.debug("Failed to delete cancelled upload from S3", e);
+        }
+    }
+
+    @Autowired
+    public void setStorageProperties(StorageProperties storageProperties) {
+        this.storageProperties = storageProperties;
+    }
+
+    @Autowired
+    public void setStorageService(StorageService storageService) {
+        this.storageService = storageService;
+    }
+
+    @Autowired
+    public void setDbLog(DbLogger dbLog) {
+        this.dbLog = dbLog;
+    }
+}
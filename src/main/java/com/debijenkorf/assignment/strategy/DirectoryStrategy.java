@@ -1,5 +1,11 @@
 package com.debijenkorf.assignment.strategy;
 
+import java.util.List;
+
 public interface DirectoryStrategy {
     String getDirectoryStrategy(String typeName, String fileName);
+
+    default List<String> getReadPaths(String typeName, String fileName) {
+        return List.of(getDirectoryStrategy(typeName, fileName));
+    }
 }
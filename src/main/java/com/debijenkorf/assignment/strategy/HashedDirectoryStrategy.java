@@ -0,0 +1,98 @@
+package com.debijenkorf.assignment.strategy;
+
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import org.apache.commons.codec.digest.MurmurHash3;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Stores files under two directories taken from a hash of the filename,
+ * so files with a common prefix are spread evenly over the S3 prefixes.
+ * In dual-read mode files are also looked up in the layout of {@link S3DirectoryStrategy},
+ * for the files that were stored before the switch.
+ */
+@Component
+@Primary
+@ConditionalOnProperty(name = "storage.directory.strategy", havingValue = "hashed")
+public class HashedDirectoryStrategy implements DirectoryStrategy {
+    private static final char DELIMITER = '/';
+    private static final String ENCODED_DELIMITER = "%2F";
+    private static final char REPLACEMENT = '_';
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private StorageProperties storageProperties;
+    private S3DirectoryStrategy legacyStrategy;
+
+    /**
+     * Get the path for saving a file in S3
+     *
+     * @param typeName Definition type
+     * @param filename The file we would like to save
+     * @return The path for saving a file in S3
+     */
+    @Override
+    public String getDirectoryStrategy(String typeName, String filename) {
+        String name = replaceDelimiters(filename);
+        int hash = MurmurHash3.hash32x86(name.getBytes(StandardCharsets.UTF_8));
+
+        StringBuilder path = new StringBuilder(typeName.length() + name.length() + 7);
+        path.append(typeName).append(DELIMITER);
+        appendHex(path, hash >>> 24);
+        path.append(DELIMITER);
+        appendHex(path, hash >>> 16);
+        return path.append(DELIMITER).append(name).toString();
+    }
+
+    /**
+     * Get the paths to look up a file in S3, the legacy path is added in dual-read mode
+     *
+     * @param typeName Definition type
+     * @param filename The file we would like to read
+     * @return The paths in the order they should be tried
+     */
+    @Override
+    public List<String> getReadPaths(String typeName, String filename) {
+        String path = getDirectoryStrategy(typeName, filename);
+        if (!storageProperties.isDirectoryDualRead()) {
+            return List.of(path);
+        }
+
+        return List.of(path, legacyStrategy.getDirectoryStrategy(typeName, filename));
+    }
+
+    // replace "/" and "%2F" with "_" in a single pass
+    private String replaceDelimiters(String filename) {
+        StringBuilder name = new StringBuilder(filename.length());
+        for (int i = 0; i < filename.length(); i++) {
+            char c = filename.charAt(i);
+            if (c == DELIMITER) {
+                name.append(REPLACEMENT);
+            } else if (c == '%' && filename.startsWith(ENCODED_DELIMITER, i)) {
+                name.append(REPLACEMENT);
+                i += ENCODED_DELIMITER.length() - 1;
+            } else {
+                name.append(c);
+            }
+        }
+        return name.toString();
+    }
+
+    private void appendHex(StringBuilder sb, int value) {
+        sb.append(HEX[(value >>> 4) & 0xF]).append(HEX[value & 0xF]);
+    }
+
+    @Autowired
+    public void setStorageProperties(StorageProperties storageProperties) {
+        this.storageProperties = storageProperties;
+    }
+
+    @Autowired
+    public void setLegacyStrategy(S3DirectoryStrategy legacyStrategy) {
+        this.legacyStrategy = legacyStrategy;
+    }
+}
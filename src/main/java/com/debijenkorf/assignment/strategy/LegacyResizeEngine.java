@@ -0,0 +1,85 @@
+package com.debijenkorf.assignment.strategy;
+
+import com.debijenkorf.assignment.data.ImageType;
+import com.debijenkorf.assignment.enums.ScaleTypeEnum;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Resizes images with {@link Image#getScaledInstance}, kept for comparison with {@link RasterResizeEngine}
+ */
+@Component
+@ConditionalOnProperty(name = "render.resize.engine", havingValue = "legacy")
+public class LegacyResizeEngine implements ResizeEngine {
+
+    /**
+     * Resize an image to the width and height of the definition type
+     *
+     * @param origin    The image to resize
+     * @param imageType Definition type
+     * @return The resized image
+     */
+    @Override
+    public BufferedImage resize(BufferedImage origin, ImageType imageType) {
+        Image resultingImage = getResultingImage(imageType, origin);
+
+        BufferedImage target = new BufferedImage(imageType.getWidth(), imageType.getHeight(),
+                BufferedImage.TYPE_INT_RGB);
+
+        int widthBuffer = Math.abs((resultingImage.getWidth(null) - target.getWidth()) / 2);
+        int heightBuffer = Math.abs((resultingImage.getHeight(null) - target.getHeight()) / 2);
+
+        Graphics2D graphics = target.createGraphics();
+
+        switch (imageType.getScaleType()) {
+            case CROP -> graphics.drawImage(resultingImage, 0, 0, target.getWidth(), target.getHeight(),
+                    widthBuffer, heightBuffer, resultingImage.getWidth(null) - widthBuffer,
+                    resultingImage.getHeight(null) - heightBuffer, null);
+            case FILL -> {
+                graphics.drawImage(resultingImage, widthBuffer, heightBuffer,
+                        target.getWidth() - widthBuffer, target.getHeight() - heightBuffer, 0, 0,
+                        resultingImage.getWidth(null), resultingImage.getHeight(null), null);
+                graphics.setColor(Color.decode(imageType.getFillColor()));
+
+                if (widthBuffer == 0) {
+                    graphics.fillRect(0, 0, target.getWidth(), heightBuffer);
+                    graphics.fillRect(0, target.getHeight() - heightBuffer, target.getWidth(), target.getHeight());
+                } else {
+                    graphics.fillRect(0, 0, widthBuffer, target.getHeight());
+                    graphics.fillRect(target.getWidth() - widthBuffer, 0, target.getWidth(), target.getHeight());
+                }
+            }
+            case SKEW -> graphics.drawImage(resultingImage, 0, 0, target.getWidth(), target.getHeight(), 0, 0,
+                    resultingImage.getWidth(null), resultingImage.getHeight(null), null);
+        }
+
+        graphics.dispose();
+        return target;
+    }
+
+    public Image getResultingImage(ImageType imageType, BufferedImage origin) {
+        Image resultingImage;
+
+        boolean wider = (imageType.getWidth() / (double) imageType.getHeight()) >= (origin.getWidth() / (double) origin.getHeight());
+        boolean crop = imageType.getScaleType().equals(ScaleTypeEnum.CROP);
+        boolean fill = imageType.getScaleType().equals(ScaleTypeEnum.FILL);
+
+        if ((crop && wider) || (fill && !wider)) {
+            // CROP && WIDER - keep the ratio and match the width
+            // FILL && HIGHER - keep the ratio and match the width
+            resultingImage = origin.getScaledInstance(imageType.getWidth(), -1, Image.SCALE_DEFAULT);
+        } else if (crop || fill) {
+            // CROP && HIGHER - keep the ratio and match the height
+            // FILL && WIDER - keep the ratio and match the height
+            resultingImage = origin.getScaledInstance(-1, imageType.getHeight(), Image.SCALE_DEFAULT);
+        } else {
+            // SKEW - fits the original image to the requested width and height
+            resultingImage = origin.getScaledInstance(imageType.getWidth(), imageType.getHeight(), Image.SCALE_DEFAULT);
+        }
+
+        return resultingImage;
+    }
+}
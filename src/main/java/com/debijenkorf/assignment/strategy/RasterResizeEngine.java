@@ -0,0 +1,115 @@
+package com.debijenkorf.assignment.strategy;
+
+import com.debijenkorf.assignment.app.configuration.RenderProperties;
+import com.debijenkorf.assignment.data.ImageType;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Resizes images directly between rasters.
+ * Large reductions are done in steps of at most half the size with bilinear filtering,
+ * the last step to the exact size uses the configured interpolation.
+ */
+@Component
+@ConditionalOnProperty(name = "render.resize.engine", havingValue = "raster", matchIfMissing = true)
+public class RasterResizeEngine implements ResizeEngine {
+    private RenderProperties renderProperties;
+
+    /**
+     * Resize an image to the width and height of the definition type
+     *
+     * @param origin    The image to resize
+     * @param imageType Definition type
+     * @return The resized image
+     */
+    @Override
+    public BufferedImage resize(BufferedImage origin, ImageType imageType) {
+        int width = imageType.getWidth();
+        int height = imageType.getHeight();
+        double widthRatio = width / (double) origin.getWidth();
+        double heightRatio = height / (double) origin.getHeight();
+
+        switch (imageType.getScaleType()) {
+            case CROP -> {
+                // keep the ratio, cover the target and cut off what sticks out
+                double ratio = Math.max(widthRatio, heightRatio);
+                BufferedImage scaled = scale(origin, Math.max(width, (int) Math.round(origin.getWidth() * ratio)),
+                        Math.max(height, (int) Math.round(origin.getHeight() * ratio)));
+                return draw(scaled, width, height, (width - scaled.getWidth()) / 2,
+                        (height - scaled.getHeight()) / 2, null);
+            }
+            case FILL -> {
+                // keep the ratio, fit inside the target and fill the rest
+                double ratio = Math.min(widthRatio, heightRatio);
+                BufferedImage scaled = scale(origin, Math.max(1, (int) Math.round(origin.getWidth() * ratio)),
+                        Math.max(1, (int) Math.round(origin.getHeight() * ratio)));
+                return draw(scaled, width, height, (width - scaled.getWidth()) / 2,
+                        (height - scaled.getHeight()) / 2, Color.decode(imageType.getFillColor()));
+            }
+            default -> {
+                // SKEW - fits the original image to the requested width and height
+                return scale(origin, width, height);
+            }
+        }
+    }
+
+    private BufferedImage scale(BufferedImage origin, int width, int height) {
+        BufferedImage current = origin;
+
+        while (current.getWidth() / 2 >= width && current.getHeight() / 2 >= height) {
+            current = draw(current, current.getWidth() / 2, current.getHeight() / 2,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        }
+
+        if (current.getWidth() == width && current.getHeight() == height
+                && current.getType() == BufferedImage.TYPE_INT_RGB) {
+            return current;
+        }
+
+        return draw(current, width, height, getInterpolation());
+    }
+
+    private BufferedImage draw(BufferedImage source, int width, int height, Object interpolation) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, interpolation);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private BufferedImage draw(BufferedImage source, int width, int height, int x, int y, Color fillColor) {
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            if (fillColor != null) {
+                graphics.setColor(fillColor);
+                graphics.fillRect(0, 0, width, height);
+            }
+            graphics.drawImage(source, x, y, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private Object getInterpolation() {
+        return switch (renderProperties.getInterpolation()) {
+            case BILINEAR -> RenderingHints.VALUE_INTERPOLATION_BILINEAR;
+            case BICUBIC -> RenderingHints.VALUE_INTERPOLATION_BICUBIC;
+        };
+    }
+
+    @Autowired
+    public void setRenderProperties(RenderProperties renderProperties) {
+        this.renderProperties = renderProperties;
+    }
+}
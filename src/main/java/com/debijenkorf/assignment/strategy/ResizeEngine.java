@@ -0,0 +1,9 @@
+package com.debijenkorf.assignment.strategy;
+
+import com.debijenkorf.assignment.data.ImageType;
+
+import java.awt.image.BufferedImage;
+
+public interface ResizeEngine {
+    BufferedImage resize(BufferedImage origin, ImageType imageType);
+}
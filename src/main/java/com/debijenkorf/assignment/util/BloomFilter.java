@@ -0,0 +1,76 @@
+package com.debijenkorf.assignment.util;
+
+import org.apache.commons.codec.digest.MurmurHash3;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter of strings.
+ * It never reports an added string as absent, a string that was not added may be reported as present
+ * with the configured false positive probability. Strings cannot be removed.
+ */
+public class BloomFilter {
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final AtomicLong insertions = new AtomicLong();
+
+    /**
+     * @param expectedInsertions     Number of strings the filter is sized for
+     * @param falsePositiveProbability False positive probability at the expected number of strings
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        long n = Math.max(1, expectedInsertions);
+        long m = (long) Math.ceil(-n * Math.log(falsePositiveProbability) / (Math.log(2) * Math.log(2)));
+        this.bits = new AtomicLongArray((int) Math.max(1, (m + Long.SIZE - 1) / Long.SIZE));
+        this.bitCount = (long) bits.length() * Long.SIZE;
+        this.hashCount = Math.max(1, (int) Math.round((double) m / n * Math.log(2)));
+    }
+
+    public void put(String value) {
+        long[] hash = hash(value);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(hash, i);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+
+            long current;
+            do {
+                current = bits.get(word);
+                if ((current & mask) != 0) {
+                    break;
+                }
+            } while (!bits.compareAndSet(word, current, current | mask));
+        }
+        insertions.incrementAndGet();
+    }
+
+    /**
+     * @return false if the string was definitely never added
+     */
+    public boolean mightContain(String value) {
+        long[] hash = hash(value);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(hash, i);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getInsertions() {
+        return insertions.get();
+    }
+
+    private long[] hash(String value) {
+        return MurmurHash3.hash128x64(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // double hashing, the i-th index is h1 + i * h2
+    private long index(long[] hash, int i) {
+        return Math.floorMod(hash[0] + i * hash[1], bitCount);
+    }
+}
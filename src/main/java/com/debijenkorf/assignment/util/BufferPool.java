@@ -0,0 +1,38 @@
+package com.debijenkorf.assignment.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A bounded pool of fixed-size byte buffers for copying streams
+ */
+public class BufferPool {
+    private final int bufferSize;
+    private final BlockingQueue<byte[]> buffers;
+
+    public BufferPool(int bufferSize, int capacity) {
+        this.bufferSize = bufferSize;
+        this.buffers = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Take a buffer from the pool, or allocate a new one when the pool is empty
+     *
+     * @return A buffer of the pool's buffer size
+     */
+    public byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    /**
+     * Return a buffer to the pool, it is dropped when the pool is full
+     *
+     * @param buffer A buffer taken from the pool
+     */
+    public void release(byte[] buffer) {
+        if (buffer.length == bufferSize) {
+            buffers.offer(buffer);
+        }
+    }
+}
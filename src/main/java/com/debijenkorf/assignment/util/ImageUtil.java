@@ -1,18 +1,28 @@
 package com.debijenkorf.assignment.util;
 
+import com.debijenkorf.assignment.data.ImageType;
+import com.debijenkorf.assignment.enums.ScaleTypeEnum;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Collection;
+import java.util.Iterator;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
 public class ImageUtil {
+    // keep at least twice the target size, so the resize still filters instead of only sampling
+    private static final int SUBSAMPLING_MARGIN = 2;
+
     // convert BufferedImage to byte[]
     public static byte[] toByteArray(BufferedImage bi, String format) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -25,4 +35,93 @@ public class ImageUtil {
         InputStream is = new ByteArrayInputStream(bytes);
         return ImageIO.read(is);
     }
+
+    // convert byte[] to BufferedImage, decoding only the pixels needed to render the image type
+    public static BufferedImage toBufferedImage(byte[] bytes, ImageType imageType) throws IOException {
+        return read(bytes, (width, height, param) -> {
+            if (imageType.getWidth() <= 0 || imageType.getHeight() <= 0) {
+                return;
+            }
+
+            Rectangle region = getSourceRegion(width, height, imageType);
+            int xSubsampling = getSubsampling(region.width, imageType.getWidth());
+            int ySubsampling = getSubsampling(region.height, imageType.getHeight());
+
+            if (!imageType.getScaleType().equals(ScaleTypeEnum.SKEW)) {
+                // keep the ratio of the source
+                xSubsampling = Math.min(xSubsampling, ySubsampling);
+                ySubsampling = xSubsampling;
+            }
+
+            param.setSourceRegion(region);
+            param.setSourceSubsampling(xSubsampling, ySubsampling, 0, 0);
+        });
+    }
+
+    // convert byte[] to BufferedImage once for several image types, decoding only the pixels the largest one needs
+    public static BufferedImage toBufferedImage(byte[] bytes, Collection<ImageType> imageTypes) throws IOException {
+        return read(bytes, (width, height, param) -> {
+            int subsampling = Integer.MAX_VALUE;
+            for (ImageType imageType : imageTypes) {
+                if (imageType.getWidth() <= 0 || imageType.getHeight() <= 0) {
+                    return;
+                }
+
+                Rectangle region = getSourceRegion(width, height, imageType);
+                subsampling = Math.min(subsampling, Math.min(getSubsampling(region.width, imageType.getWidth()),
+                        getSubsampling(region.height, imageType.getHeight())));
+            }
+
+            if (subsampling != Integer.MAX_VALUE) {
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            }
+        });
+    }
+
+    private static BufferedImage read(byte[] bytes, ReadParamSetter paramSetter) throws IOException {
+        try (ImageInputStream iis = ImageIO.createImageInputStream(new ByteArrayInputStream(bytes))) {
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(iis);
+            if (!readers.hasNext()) {
+                throw new IOException("Unsupported image format");
+            }
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(iis, true, true);
+                ImageReadParam param = reader.getDefaultReadParam();
+                paramSetter.set(reader.getWidth(0), reader.getHeight(0), param);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private static int getSubsampling(int sourceSize, int targetSize) {
+        return Math.max(1, sourceSize / targetSize / SUBSAMPLING_MARGIN);
+    }
+
+    /**
+     * Get the part of the source that is visible in the image type,
+     * for CROP the centered region with the ratio of the image type, otherwise the whole source
+     */
+    private static Rectangle getSourceRegion(int width, int height, ImageType imageType) {
+        if (!imageType.getScaleType().equals(ScaleTypeEnum.CROP)) {
+            return new Rectangle(0, 0, width, height);
+        }
+
+        double ratio = imageType.getWidth() / (double) imageType.getHeight();
+        if (width / (double) height > ratio) {
+            int regionWidth = Math.max(1, (int) Math.round(height * ratio));
+            return new Rectangle((width - regionWidth) / 2, 0, regionWidth, height);
+        }
+
+        int regionHeight = Math.max(1, (int) Math.round(width / ratio));
+        return new Rectangle(0, (height - regionHeight) / 2, width, regionHeight);
+    }
+
+    @FunctionalInterface
+    private interface ReadParamSetter {
+        void set(int width, int height, ImageReadParam param);
+    }
 }
@@ -0,0 +1,138 @@
+package com.debijenkorf.assignment.util;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * A stage of a pipeline, with its own worker threads and a bounded input queue.
+ * Putting an item blocks while the queue is full, so a slow stage holds back the stages before it.
+ *
+ * @param <T> Type of the items
+ */
+@Slf4j
+public class PipelineStage<T> {
+    private static final long POLL_MS = 100;
+
+    @Getter
+    private final String name;
+    private final int threads;
+    private final BlockingQueue<T> queue;
+    private final StageHandler<T> handler;
+    private final BiConsumer<T, Exception> onFailure;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean closed;
+
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private long startNanos;
+    private long endNanos;
+
+    /**
+     * @param name          Name of the stage, also used for the worker threads
+     * @param threads       Number of worker threads
+     * @param queueCapacity Capacity of the input queue
+     * @param handler       Processes an item, usually by putting the result in the next stage
+     * @param onFailure     Called with the item when the handler fails
+     */
+    public PipelineStage(String name, int threads, int queueCapacity, StageHandler<T> handler,
+                         BiConsumer<T, Exception> onFailure) {
+        this.name = name;
+        this.threads = threads;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.handler = handler;
+        this.onFailure = onFailure;
+    }
+
+    public void start() {
+        this.startNanos = System.nanoTime();
+        for (int i = 1; i <= threads; i++) {
+            Thread worker = new Thread(this::work, name + "-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    /**
+     * Put an item in the queue, waiting while the queue is full
+     */
+    public void put(T item) throws InterruptedException {
+        queue.put(item);
+    }
+
+    /**
+     * Stop taking new items and wait until the queued ones are processed
+     */
+    public void close() throws InterruptedException {
+        closed = true;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        this.endNanos = System.nanoTime();
+    }
+
+    /**
+     * Get the processed and failed items and the throughput of the stage
+     *
+     * @return Stage statistics
+     */
+    public Map<String, Object> getStatistics() {
+        long elapsedNanos = (endNanos > 0 ? endNanos : System.nanoTime()) - startNanos;
+        long count = processed.get();
+
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("threads", threads);
+        statistics.put("queueDepth", queue.size());
+        statistics.put("processed", count);
+        statistics.put("failed", failed.get());
+        statistics.put("perSecond", elapsedNanos > 0 ? count * TimeUnit.SECONDS.toNanos(1) / (double) elapsedNanos : 0);
+        statistics.put("averageMs", count > 0 ? TimeUnit.NANOSECONDS.toMillis(busyNanos.get() / count) : 0);
+        return statistics;
+    }
+
+    private void work() {
+        try {
+            while (true) {
+                T item = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+                if (item == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                try {
+                    handler.handle(item);
+                    processed.incrementAndGet();
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    failed.incrementAndGet();
+                    log.debug("Stage {} failed", name, e);
+                    onFailure.accept(item, e);
+                } finally {
+                    busyNanos.addAndGet(System.nanoTime() - start);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @FunctionalInterface
+    public interface StageHandler<T> {
+        void handle(T item) throws Exception;
+    }
+}
@@ -0,0 +1,91 @@
+package com.debijenkorf.assignment.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Deduplicates concurrent calls for the same key: the first caller does the work,
+ * callers arriving while it is in flight wait for its result instead of repeating it
+ *
+ * @param <K> Key type
+ * @param <V> Result type
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Execute the supplier, unless a call for the same key is already in flight
+     *
+     * @param key      Key identifying the work
+     * @param supplier The work to do
+     * @return Result of the supplier, either from this call or from the call in flight
+     */
+    public V execute(K key, Supplier<V> supplier) {
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            return await(existing);
+        }
+
+        try {
+            V result = supplier.get();
+            call.complete(result);
+            return result;
+        } catch (RuntimeException | Error e) {
+            call.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+        }
+    }
+
+    /**
+     * Start the asynchronous work, unless a call for the same key is already in flight.
+     * No thread waits for the call in flight, callers share its future.
+     *
+     * @param key      Key identifying the work
+     * @param supplier Starts the work
+     * @return Future of the result, either of this call or of the call in flight
+     */
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> supplier) {
+        CompletableFuture<V> call = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, call);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            supplier.get().whenComplete((result, e) -> {
+                inFlight.remove(key, call);
+                if (e != null) {
+                    call.completeExceptionally(e instanceof CompletionException && e.getCause() != null
+                            ? e.getCause() : e);
+                } else {
+                    call.complete(result);
+                }
+            });
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, call);
+            call.completeExceptionally(e);
+            throw e;
+        }
+        return call;
+    }
+
+    private V await(CompletableFuture<V> call) {
+        try {
+            return call.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            if (e.getCause() instanceof Error cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+}
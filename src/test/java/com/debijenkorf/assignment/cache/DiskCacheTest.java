@@ -0,0 +1,98 @@
+package com.debijenkorf.assignment.cache;
+
+import com.debijenkorf.assignment.app.configuration.CacheProperties;
+import com.debijenkorf.assignment.data.ImageContent;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DiskCacheTest {
+    private static final byte[] DATA = "image".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    private Path root;
+
+    private CacheProperties cacheProperties;
+    private DiskCache diskCache;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        this.cacheProperties = new CacheProperties();
+        ReflectionTestUtils.setField(cacheProperties, "diskEnabled", true);
+        ReflectionTestUtils.setField(cacheProperties, "diskPath", root.toString());
+        ReflectionTestUtils.setField(cacheProperties, "diskMaxBytes", 1024L);
+        this.diskCache = new DiskCache();
+        diskCache.setCacheProperties(cacheProperties);
+        diskCache.postConstruct();
+    }
+
+    @Test
+    void testInvalidateAfterGet_servesOpenedFile() throws Exception {
+        diskCache.put("thumbnail/a.jpg", DATA);
+        ImageContent content = diskCache.get("thumbnail/a.jpg");
+
+        diskCache.invalidate("thumbnail/a.jpg");
+        assertNull(diskCache.get("thumbnail/a.jpg"));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        content.writeTo(out, null);
+        assertArrayEquals(DATA, out.toByteArray());
+    }
+
+    @Test
+    void testStat_noBody() {
+        diskCache.put("thumbnail/a.jpg", DATA);
+
+        ImageContent validator = diskCache.stat("thumbnail/a.jpg");
+        assertEquals(DATA.length, validator.getContentLength());
+        assertFalse(validator.isFile());
+        assertNull(diskCache.stat("thumbnail/b.jpg"));
+    }
+
+    @Test
+    void testStat_notCountedAndNoHashAfterRestart() throws Exception {
+        diskCache.put("thumbnail/a.jpg", DATA);
+        diskCache.stat("thumbnail/a.jpg");
+        assertEquals(0L, diskCache.getStatistics().get("hits"));
+
+        // the index is rebuilt without ETags, stat does not read the file to calculate one
+        this.diskCache = new DiskCache();
+        diskCache.setCacheProperties(cacheProperties);
+        diskCache.postConstruct();
+        assertNull(diskCache.stat("thumbnail/a.jpg"));
+        assertEquals(DigestUtils.md5Hex(DATA), diskCache.get("thumbnail/a.jpg").getETag());
+        assertEquals(DigestUtils.md5Hex(DATA), diskCache.stat("thumbnail/a.jpg").getETag());
+    }
+
+    @Test
+    void testPutDuringGet_sizeAndETagMatchFile() throws Exception {
+        byte[] other = "another image".getBytes(StandardCharsets.UTF_8);
+        diskCache.put("thumbnail/a.jpg", DATA);
+
+        Thread writer = new Thread(() -> {
+            for (int i = 0; i < 200; i++) {
+                diskCache.put("thumbnail/a.jpg", i % 2 == 0 ? other : DATA);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            try (ImageContent content = diskCache.get("thumbnail/a.jpg")) {
+                byte[] read = content.toByteArray();
+                assertEquals(read.length, content.getContentLength());
+                assertEquals(DigestUtils.md5Hex(read), content.getETag());
+            }
+        }
+        writer.join();
+    }
+}
@@ -0,0 +1,74 @@
+package com.debijenkorf.assignment.cache;
+
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import com.debijenkorf.assignment.service.FileSystemStorageService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ExistenceIndexTest {
+    private static final byte[] DATA = "image".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    private Path root;
+
+    private FileSystemStorageService storage;
+    private ExistenceIndex existenceIndex;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        StorageProperties storageProperties = new StorageProperties();
+        ReflectionTestUtils.setField(storageProperties, "filesystemPath", root.toString());
+        ReflectionTestUtils.setField(storageProperties, "existenceIndexEnabled", true);
+        ReflectionTestUtils.setField(storageProperties, "existenceIndexExpectedKeysPerType", 1000L);
+        ReflectionTestUtils.setField(storageProperties, "existenceIndexFalsePositiveProbability", 0.01);
+        ReflectionTestUtils.setField(storageProperties, "existenceIndexRefreshIntervalMs", 50L);
+
+        this.storage = new FileSystemStorageService();
+        storage.setStorageProperties(storageProperties);
+        storage.postConstruct();
+        storage.upload("thumbnail/a.jpg", DATA, "image/jpeg");
+
+        this.existenceIndex = new ExistenceIndex();
+        existenceIndex.setStorageProperties(storageProperties);
+        existenceIndex.setStorageService(storage);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        existenceIndex.preDestroy();
+    }
+
+    @Test
+    void testFileStoredByOtherNode_foundAfterRebuild() throws Exception {
+        existenceIndex.postConstruct();
+        assertTrue(await(() -> Boolean.TRUE.equals(existenceIndex.getStatistics().get("loaded"))));
+        assertTrue(existenceIndex.mightExist("thumbnail/a.jpg"));
+        assertFalse(existenceIndex.mightExist("thumbnail/b.jpg"));
+
+        // stored without add(), as by another node
+        storage.upload("thumbnail/b.jpg", DATA, "image/jpeg");
+
+        assertTrue(await(() -> existenceIndex.mightExist("thumbnail/b.jpg")));
+    }
+
+    private boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+}
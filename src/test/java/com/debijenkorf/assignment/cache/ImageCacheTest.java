@@ -0,0 +1,61 @@
+package com.debijenkorf.assignment.cache;
+
+import com.debijenkorf.assignment.app.configuration.CacheProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageCacheTest {
+    private static final byte[] DATA = "image".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void testPutAndInvalidate() {
+        ImageCache imageCache = newImageCache(1024, 0);
+
+        imageCache.put("Thumbnail", "a.jpg", DATA);
+        assertArrayEquals(DATA, imageCache.get("thumbnail", "a.jpg"));
+        assertTrue(imageCache.contains("thumbnail", "a.jpg"));
+
+        imageCache.invalidate("thumbnail", "a.jpg");
+        assertNull(imageCache.get("thumbnail", "a.jpg"));
+    }
+
+    @Test
+    void testLargeImage_notCached() {
+        ImageCache imageCache = newImageCache(DATA.length - 1, 0);
+
+        imageCache.put("thumbnail", "a.jpg", DATA);
+        assertFalse(imageCache.contains("thumbnail", "a.jpg"));
+    }
+
+    @Test
+    void testExpireAfterWrite_notServedAfterwards() throws Exception {
+        ImageCache imageCache = newImageCache(1024, 50);
+
+        imageCache.put("thumbnail", "a.jpg", DATA);
+        assertArrayEquals(DATA, imageCache.get("thumbnail", "a.jpg"));
+
+        Thread.sleep(200);
+        assertNull(imageCache.get("thumbnail", "a.jpg"));
+    }
+
+    private ImageCache newImageCache(int maxEntryBytes, long expireAfterWriteMs) {
+        CacheProperties cacheProperties = new CacheProperties();
+        ReflectionTestUtils.setField(cacheProperties, "memoryMaxBytes", 1024L * 1024);
+        ReflectionTestUtils.setField(cacheProperties, "memoryMaxEntryBytes", maxEntryBytes);
+        ReflectionTestUtils.setField(cacheProperties, "memoryExpireAfterWriteMs", expireAfterWriteMs);
+
+        ImageCache imageCache = new ImageCache();
+        imageCache.setCacheProperties(cacheProperties);
+        imageCache.setMeterRegistry(new SimpleMeterRegistry());
+        imageCache.postConstruct();
+        return imageCache;
+    }
+}
@@ -0,0 +1,253 @@
+package com.debijenkorf.assignment.controller;
+
+import com.debijenkorf.assignment.app.configuration.HttpProperties;
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import com.debijenkorf.assignment.data.ImageContent;
+import com.debijenkorf.assignment.enums.FlushModeEnum;
+import com.debijenkorf.assignment.exception.ServiceOverloadedException;
+import com.debijenkorf.assignment.service.ImageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class ImageControllerTest {
+    private static final byte[] IMAGE = "0123456789".getBytes(StandardCharsets.UTF_8);
+    private static final String ETAG = "abcdef";
+    private static final long LAST_MODIFIED = 1_700_000_000_000L;
+    private static final String LAST_MODIFIED_DATE = "Tue, 14 Nov 2023 22:13:20 GMT";
+
+    private ImageContent stored;
+    private ImageContent ranged;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    public void setUp() {
+        this.stored = ImageContent.of(IMAGE, ETAG, LAST_MODIFIED);
+        this.ranged = stored;
+
+        HttpProperties httpProperties = new HttpProperties();
+        ReflectionTestUtils.setField(httpProperties, "defaultCacheControl", "max-age=60");
+        ReflectionTestUtils.setField(httpProperties, "typeCacheControl", Map.of());
+
+        StorageProperties storageProperties = new StorageProperties();
+        ReflectionTestUtils.setField(storageProperties, "flushMaxReferences", 10);
+
+        ImageController controller = new ImageController();
+        controller.setHttpProperties(httpProperties);
+        controller.setStorageProperties(storageProperties);
+        controller.setImageService(new ImageService() {
+            @Override
+            public String getVariant(String type, Integer width) {
+                return type;
+            }
+
+            @Override
+            public boolean isResponsive(String type) {
+                return false;
+            }
+
+            @Override
+            public ImageContent getImageValidator(String type, String filename) {
+                return stored;
+            }
+
+            @Override
+            public ImageContent getImageRange(String type, String filename, long start, long end) {
+                return ranged.slice(start, end);
+            }
+
+            @Override
+            public ImageContent getImageContent(String type, String filename) {
+                return ranged;
+            }
+
+            @Override
+            public CompletableFuture<ImageContent> getImageAsync(String type, String filename) {
+                return CompletableFuture.completedFuture(ranged);
+            }
+
+            @Override
+            public String getContentType(String type, ImageContent content) {
+                return type.equals("original") ? MediaType.IMAGE_PNG_VALUE : MediaType.IMAGE_JPEG_VALUE;
+            }
+
+            @Override
+            public void flushImage(String type, String filename, FlushModeEnum mode) {
+                throw new ServiceOverloadedException("Refresh queue is full", 2);
+            }
+
+            @Override
+            public Map<String, String> flushImages(String type, Collection<String> filenames, FlushModeEnum mode) {
+                return Map.of("bbbbbbbbbb.jpg", "Access Denied");
+            }
+        });
+        this.mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @Test
+    void testRange_partialContent() throws Exception {
+        perform(show().header(HttpHeaders.RANGE, "bytes=2-4"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-4/10"))
+                .andExpect(content().bytes("234".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testSuffixRange_partialContent() throws Exception {
+        perform(show().header(HttpHeaders.RANGE, "bytes=-3"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 7-9/10"))
+                .andExpect(content().bytes("789".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testRangeBeyondImage_notSatisfiable() throws Exception {
+        mockMvc.perform(show().header(HttpHeaders.RANGE, "bytes=10-20"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    void testMultipleRanges_wholeImage() throws Exception {
+        perform(show().header(HttpHeaders.RANGE, "bytes=0-1,4-5"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(IMAGE));
+    }
+
+    @Test
+    void testIfRangeETagMatch_partialContent() throws Exception {
+        perform(show().header(HttpHeaders.RANGE, "bytes=2-4").header(HttpHeaders.IF_RANGE, "\"" + ETAG + "\""))
+                .andExpect(status().isPartialContent());
+    }
+
+    @Test
+    void testIfRangeETagMismatch_wholeImage() throws Exception {
+        perform(show().header(HttpHeaders.RANGE, "bytes=2-4").header(HttpHeaders.IF_RANGE, "\"other\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(IMAGE));
+    }
+
+    @Test
+    void testIfRangeWeakETag_wholeImage() throws Exception {
+        perform(show().header(HttpHeaders.RANGE, "bytes=2-4").header(HttpHeaders.IF_RANGE, "W/\"" + ETAG + "\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    void testIfRangeDateMatch_partialContent() throws Exception {
+        perform(show().header(HttpHeaders.RANGE, "bytes=2-4").header(HttpHeaders.IF_RANGE, LAST_MODIFIED_DATE))
+                .andExpect(status().isPartialContent());
+    }
+
+    @Test
+    void testIfRangeDateMismatch_wholeImage() throws Exception {
+        perform(show().header(HttpHeaders.RANGE, "bytes=2-4")
+                .header(HttpHeaders.IF_RANGE, "Wed, 15 Nov 2023 22:13:20 GMT"))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(IMAGE));
+    }
+
+    @Test
+    void testImageReplacedDuringRange_wholeImage() throws Exception {
+        byte[] replaced = "abcdefghijkl".getBytes(StandardCharsets.UTF_8);
+        this.ranged = ImageContent.of(replaced, "replaced", ImageContent.UNKNOWN_LAST_MODIFIED);
+
+        perform(show().header(HttpHeaders.RANGE, "bytes=2-4"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, "\"replaced\""))
+                .andExpect(content().bytes(replaced));
+    }
+
+    @Test
+    void testAsyncIfNoneMatch_notModified() throws Exception {
+        perform(showAsync().header(HttpHeaders.IF_NONE_MATCH, "\"" + ETAG + "\""))
+                .andExpect(status().isNotModified());
+    }
+
+    @Test
+    void testAsyncRange_partialContent() throws Exception {
+        performAsync(showAsync().header(HttpHeaders.RANGE, "bytes=2-4"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes 2-4/10"))
+                .andExpect(header().string(HttpHeaders.ETAG, "\"" + ETAG + "\""))
+                .andExpect(content().bytes("234".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void testAsyncIfRangeMismatch_wholeImage() throws Exception {
+        performAsync(showAsync().header(HttpHeaders.RANGE, "bytes=2-4").header(HttpHeaders.IF_RANGE, "\"other\""))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(IMAGE));
+    }
+
+    @Test
+    void testOriginal_contentTypeOfImage() throws Exception {
+        perform(get("/image/show/original/seo/").param("reference", "abcdefghij.png"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, MediaType.IMAGE_PNG_VALUE));
+        perform(get("/image/show/original/seo/").param("reference", "abcdefghij.png")
+                        .header(HttpHeaders.RANGE, "bytes=2-4"))
+                .andExpect(status().isPartialContent())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, MediaType.IMAGE_PNG_VALUE));
+        performAsync(get("/image/async/show/original/seo/").param("reference", "abcdefghij.png"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_TYPE, MediaType.IMAGE_PNG_VALUE));
+    }
+
+    @Test
+    void testFlushRefreshQueueFull_serviceUnavailable() throws Exception {
+        mockMvc.perform(delete("/image/flush/thumbnail/").param("reference", "abcdefghij.jpg"))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "2"));
+    }
+
+    @Test
+    void testBulkFlushPartialFailure_report() throws Exception {
+        mockMvc.perform(post("/image/flush/thumbnail/bulk").contentType(MediaType.APPLICATION_JSON)
+                        .content("[\"aaaaaaaaaa.jpg\", \"bbbbbbbbbb.jpg\", \"aaaaaaaaaa.jpg\"]"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.requested").value(3))
+                .andExpect(jsonPath("$.flushed").value(1))
+                .andExpect(jsonPath("$.failed['bbbbbbbbbb.jpg']").value("Access Denied"));
+    }
+
+    private MockHttpServletRequestBuilder show() {
+        return get("/image/show/thumbnail/seo/").param("reference", "abcdefghij.jpg");
+    }
+
+    private MockHttpServletRequestBuilder showAsync() {
+        return get("/image/async/show/thumbnail/seo/").param("reference", "abcdefghij.jpg");
+    }
+
+    // the future and the streamed body are both dispatched asynchronously
+    private ResultActions performAsync(MockHttpServletRequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request).andReturn();
+        return mockMvc.perform(asyncDispatch(mockMvc.perform(asyncDispatch(result)).andReturn()));
+    }
+
+    private ResultActions perform(MockHttpServletRequestBuilder request) throws Exception {
+        MvcResult result = mockMvc.perform(request).andReturn();
+        return mockMvc.perform(asyncDispatch(result));
+    }
+}
@@ -0,0 +1,99 @@
+package com.debijenkorf.assignment.data;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ImageContentTest {
+    private static final byte[] IMAGE = "0123456789".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    private Path root;
+
+    @Test
+    void testSliceBytes() throws Exception {
+        ImageContent slice = ImageContent.of(IMAGE, "etag", 1000L).slice(2, 4);
+
+        assertEquals(3, slice.getContentLength());
+        assertArrayEquals(bytes("234"), slice.toByteArray());
+        assertEquals("etag", slice.getETag());
+        assertEquals(1000L, slice.getLastModified());
+    }
+
+    @Test
+    void testSliceOfSliceBytes_writtenFromOffset() throws Exception {
+        ImageContent slice = ImageContent.of(IMAGE).slice(2, 8).slice(1, 2);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        slice.writeTo(out, null);
+        assertArrayEquals(bytes("34"), out.toByteArray());
+        assertArrayEquals(bytes("34"), slice.getBytes());
+    }
+
+    @Test
+    void testPeekSlice_readsStartOfImage() throws Exception {
+        assertArrayEquals(bytes("012"), ImageContent.of(IMAGE).slice(5, 8).peek(3));
+        assertArrayEquals(bytes("012"), openFile().slice(5, 8).peek(3));
+        assertArrayEquals(IMAGE, ImageContent.of(IMAGE).peek(100));
+    }
+
+    @Test
+    void testSliceBytes_endLimitedToImage() throws Exception {
+        ImageContent slice = ImageContent.of(IMAGE).slice(7, 100);
+
+        assertEquals(3, slice.getContentLength());
+        assertArrayEquals(bytes("789"), slice.toByteArray());
+    }
+
+    @Test
+    void testSliceFile_readFromOffset() throws Exception {
+        ImageContent slice = openFile().slice(3, 6);
+
+        assertEquals(4, slice.getContentLength());
+        assertArrayEquals(bytes("3456"), slice.toByteArray());
+    }
+
+    @Test
+    void testSliceFile_writtenFromOffset() throws Exception {
+        ImageContent slice = openFile().slice(8, 100);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        slice.writeTo(out, null);
+        assertArrayEquals(bytes("89"), out.toByteArray());
+    }
+
+    @Test
+    void testSliceOfSliceFile_offsetsAdded() throws Exception {
+        ImageContent slice = openFile().slice(2, 8).slice(1, 2);
+
+        assertArrayEquals(bytes("34"), slice.toByteArray());
+    }
+
+    @Test
+    void testSliceStream_notSupported() {
+        ImageContent content = ImageContent.of(new ByteArrayInputStream(IMAGE), IMAGE.length, "etag", 0L);
+
+        assertThrows(IllegalStateException.class, () -> content.slice(0, 1));
+    }
+
+    private ImageContent openFile() throws Exception {
+        Path file = root.resolve("image.jpg");
+        Files.write(file, IMAGE);
+        return ImageContent.of(FileChannel.open(file, StandardOpenOption.READ), IMAGE.length, "etag", 0L);
+    }
+
+    private byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,39 @@
+package com.debijenkorf.assignment.data;
+
+import com.debijenkorf.assignment.enums.ImageTypeEnum;
+import com.debijenkorf.assignment.enums.ScaleTypeEnum;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ImageTypeTest {
+    private final ImageType thumbnail = new ImageType(150, 150, 80, null, ImageTypeEnum.JPG,
+            ScaleTypeEnum.CROP, List.of(50, 100, 200, 300));
+
+    @Test
+    void testGetBucket_snapsUpToAllowedWidth() {
+        assertEquals(50, thumbnail.getBucket(1));
+        assertEquals(100, thumbnail.getBucket(100));
+        assertEquals(150, thumbnail.getBucket(101));
+        assertEquals(200, thumbnail.getBucket(151));
+    }
+
+    @Test
+    void testGetBucket_cappedAtLargestWidth() {
+        assertEquals(300, thumbnail.getBucket(4000));
+        ImageType fixed = new ImageType(150, 150, 80, null, ImageTypeEnum.JPG, ScaleTypeEnum.CROP);
+        assertEquals(150, fixed.getBucket(40));
+        assertEquals(150, fixed.getBucket(400));
+    }
+
+    @Test
+    void testWithWidth_keepsAspectRatio() {
+        ImageType crop = new ImageType(500, 1000, 80, null, ImageTypeEnum.JPG, ScaleTypeEnum.CROP);
+        ImageType variant = crop.withWidth(320);
+        assertEquals(320, variant.getWidth());
+        assertEquals(160, variant.getHeight());
+        assertEquals(List.of(), variant.getWidths());
+    }
+}
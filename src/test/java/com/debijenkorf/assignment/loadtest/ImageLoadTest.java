@@ -0,0 +1,222 @@
+package com.debijenkorf.assignment.loadtest;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * An end-to-end load test of {@link com.debijenkorf.assignment.controller.ImageController}, against the filesystem
+ * storage and a local source stub, without S3, the real source or the log database.
+ * It reports the p50/p99 latency and the requests per second of cold renders, warm hits, a hit/miss mix and flushes.
+ * <p>
+ * Run with {@code mvn test -Dtest=ImageLoadTest -Dloadtest=true}, the load is configured with system properties:
+ * {@code loadtest.references}, {@code loadtest.requests}, {@code loadtest.concurrency}, {@code loadtest.hit-ratio},
+ * {@code loadtest.types} (weighted, e.g. {@code thumbnail:4,crop:1}), {@code loadtest.source-latency-ms}
+ * and {@code loadtest.seed}.
+ */
+@Slf4j
+@EnabledIfSystemProperty(named = "loadtest", matches = "true")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"storage.type=filesystem", "logdb.enabled=false"})
+class ImageLoadTest {
+    private static final int REFERENCES = Integer.getInteger("loadtest.references", 200);
+    private static final int REQUESTS = Integer.getInteger("loadtest.requests", 5000);
+    private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 16);
+    private static final double HIT_RATIO = Double.parseDouble(System.getProperty("loadtest.hit-ratio", "0.9"));
+    private static final String TYPES = System.getProperty("loadtest.types", "thumbnail:4,crop:1,original:1");
+    private static final long SOURCE_LATENCY_MS = Long.getLong("loadtest.source-latency-ms", 0L);
+    private static final long SEED = Long.getLong("loadtest.seed", 42L);
+
+    private static SourceStub source;
+    private static Path storage;
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) throws IOException {
+        source = new SourceStub(1600, 1200, SOURCE_LATENCY_MS);
+        storage = Files.createTempDirectory("image-storage");
+        registry.add("source.root.url", source::getRootUrl);
+        registry.add("storage.filesystem.path", storage::toString);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        source.close();
+    }
+
+    @Test
+    void load() throws Exception {
+        Random random = new Random(SEED);
+        WeightedTypes types = new WeightedTypes(TYPES);
+
+        // every reference is rendered once in a random type, those variants are the warm set
+        List<String[]> warm = new ArrayList<>();
+        for (int i = 0; i < REFERENCES; i++) {
+            warm.add(new String[]{types.next(random), "cold-" + i + ".jpg"});
+        }
+
+        List<String[]> hits = new ArrayList<>();
+        List<String[]> mixed = new ArrayList<>();
+        for (int i = 0; i < REQUESTS; i++) {
+            hits.add(warm.get(random.nextInt(warm.size())));
+            mixed.add(random.nextDouble() < HIT_RATIO
+                    ? warm.get(random.nextInt(warm.size()))
+                    : new String[]{types.next(random), "mixed-" + i + ".jpg"});
+        }
+
+        Map<String, Result> results = new LinkedHashMap<>();
+        results.put("cold render", run(warm, this::show));
+        results.put("warm hit", run(hits, this::show));
+        results.put("mixed " + HIT_RATIO, run(mixed, this::show));
+        results.put("flush", run(warm, this::flush));
+
+        log.info("Load test: {} references, {} requests, concurrency {}, types {}, source requests {}",
+                REFERENCES, REQUESTS, CONCURRENCY, TYPES, source.getRequests());
+        log.info(String.format("%-12s %8s %8s %10s %10s %10s", "phase", "requests", "errors", "p50 ms", "p99 ms", "rps"));
+        results.forEach((phase, result) -> log.info(String.format("%-12s %8d %8d %10.2f %10.2f %10.1f", phase,
+                result.latencies.length, result.errors, result.percentile(50), result.percentile(99), result.rps())));
+
+        results.forEach((phase, result) -> assertEquals(0, result.errors, phase + " errors"));
+    }
+
+    private HttpRequest show(String type, String reference) {
+        return HttpRequest.newBuilder(uri("image/show/" + type + "/seo/?reference=" + encode(reference))).GET().build();
+    }
+
+    private HttpRequest flush(String type, String reference) {
+        return HttpRequest.newBuilder(uri("image/flush/" + type + "/?reference=" + encode(reference))).DELETE().build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + "/" + path);
+    }
+
+    private String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Send the requests from a fixed number of threads and record the latency of every request
+     */
+    private Result run(List<String[]> plan, RequestFactory factory) throws Exception {
+        long[] latencies = new long[plan.size()];
+        AtomicLong errors = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENCY);
+
+        long start = System.nanoTime();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < plan.size(); i++) {
+                int index = i;
+                HttpRequest request = factory.create(plan.get(i)[0], plan.get(i)[1]);
+                futures.add(executor.submit(() -> {
+                    long sent = System.nanoTime();
+                    try {
+                        HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                        if (response.statusCode() >= 300) {
+                            errors.incrementAndGet();
+                        }
+                    } catch (IOException | InterruptedException e) {
+                        errors.incrementAndGet();
+                    }
+                    latencies[index] = System.nanoTime() - sent;
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        return new Result(latencies, errors.get(), System.nanoTime() - start);
+    }
+
+    @FunctionalInterface
+    private interface RequestFactory {
+        HttpRequest create(String type, String reference);
+    }
+
+    private static class Result {
+        private final long[] latencies;
+        private final long errors;
+        private final long elapsedNanos;
+
+        private Result(long[] latencies, long errors, long elapsedNanos) {
+            this.latencies = latencies.clone();
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+            Arrays.sort(this.latencies);
+        }
+
+        private double percentile(int percentile) {
+            int index = (int) Math.ceil(percentile / 100.0 * latencies.length) - 1;
+            return latencies[Math.max(0, index)] / (double) TimeUnit.MILLISECONDS.toNanos(1);
+        }
+
+        private double rps() {
+            return latencies.length * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+        }
+    }
+
+    /**
+     * Picks types with a probability proportional to their weight
+     */
+    private static class WeightedTypes {
+        private final List<String> names = new ArrayList<>();
+        private final List<Integer> cumulative = new ArrayList<>();
+        private int total;
+
+        private WeightedTypes(String spec) {
+            for (String entry : spec.split(",")) {
+                String[] parts = entry.trim().split(":");
+                total += parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+                names.add(parts[0]);
+                cumulative.add(total);
+            }
+        }
+
+        private String next(Random random) {
+            int value = random.nextInt(total);
+            for (int i = 0; i < names.size(); i++) {
+                if (value < cumulative.get(i)) {
+                    return names.get(i);
+                }
+            }
+            return names.get(names.size() - 1);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.debijenkorf.assignment.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import javax.imageio.ImageIO;
+import java.awt.Color;
+import java.awt.GradientPaint;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A local stand-in for the image source. It serves the same generated JPEG for every path,
+ * paths containing "missing" are answered with 404. An optional delay simulates the latency of the real source.
+ */
+class SourceStub implements AutoCloseable {
+    private final HttpServer server;
+    private final byte[] image;
+    private final long latencyMs;
+    private final AtomicLong requests = new AtomicLong();
+
+    SourceStub(int width, int height, long latencyMs) throws IOException {
+        this.image = createImage(width, height);
+        this.latencyMs = latencyMs;
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+    }
+
+    String getRootUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    long getRequests() {
+        return requests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            if (latencyMs > 0) {
+                TimeUnit.MILLISECONDS.sleep(latencyMs);
+            }
+
+            if (exchange.getRequestURI().getPath().contains("missing")) {
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "image/jpeg");
+            exchange.sendResponseHeaders(200, image.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(image);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] createImage(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setPaint(new GradientPaint(0, 0, Color.ORANGE, width, height, Color.BLUE));
+        g.fillRect(0, 0, width, height);
+        g.setColor(Color.WHITE);
+        for (int x = 0; x < width; x += 40) {
+            g.drawLine(x, 0, width - x, height);
+        }
+        g.dispose();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "jpg", out);
+        return out.toByteArray();
+    }
+}
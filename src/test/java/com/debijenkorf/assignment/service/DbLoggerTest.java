@@ -0,0 +1,181 @@
+package com.debijenkorf.assignment.service;
+
+import com.debijenkorf.assignment.app.configuration.LogDBProperties;
+import com.debijenkorf.assignment.data.LogEvent;
+import com.debijenkorf.assignment.enums.OverflowPolicyEnum;
+import com.debijenkorf.assignment.repository.LogDBRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DbLoggerTest {
+    private LogDBProperties logDBProperties;
+    private DbLogger dbLog;
+
+    private final List<String> inserted = new CopyOnWriteArrayList<>();
+    // the first batch waits for this latch, so the queue fills up behind it
+    private final CountDownLatch insertRelease = new CountDownLatch(1);
+    private final CountDownLatch insertEntered = new CountDownLatch(1);
+    // thrown by the next insert, e.g. a pool timeout
+    private volatile RuntimeException insertFailure;
+
+    @BeforeEach
+    public void setUp() {
+        this.logDBProperties = new LogDBProperties();
+        ReflectionTestUtils.setField(logDBProperties, "enabled", true);
+        ReflectionTestUtils.setField(logDBProperties, "queueCapacity", 8);
+        ReflectionTestUtils.setField(logDBProperties, "batchSize", 1);
+        ReflectionTestUtils.setField(logDBProperties, "flushIntervalMs", 10L);
+        ReflectionTestUtils.setField(logDBProperties, "overflowPolicy", OverflowPolicyEnum.DROP);
+        ReflectionTestUtils.setField(logDBProperties, "sampleRate", 2);
+        ReflectionTestUtils.setField(logDBProperties, "blockTimeoutMs", 50L);
+
+        this.dbLog = new DbLogger();
+        dbLog.setLogDBProperties(logDBProperties);
+        dbLog.setLogRepository(new LogDBRepository() {
+            @Override
+            public boolean insertBatch(List<LogEvent> events) {
+                RuntimeException failure = insertFailure;
+                if (failure != null) {
+                    insertFailure = null;
+                    throw failure;
+                }
+                insertEntered.countDown();
+                try {
+                    assertTrue(insertRelease.await(10, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                events.forEach(x -> inserted.add(x.getMessage()));
+                return true;
+            }
+        });
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        insertRelease.countDown();
+        dbLog.preDestroy();
+    }
+
+    @Test
+    void testDrop_dropsAtCapacity() throws Exception {
+        dbLog.postConstruct();
+        holdWriter();
+
+        log(9);
+
+        assertEquals(1L, dbLog.getStatistics().get("dropped"));
+        assertEquals(8, dbLog.getStatistics().get("queueDepth"));
+    }
+
+    @Test
+    void testSample_keepsEveryNthAboveThreeQuarters() throws Exception {
+        ReflectionTestUtils.setField(logDBProperties, "overflowPolicy", OverflowPolicyEnum.SAMPLE);
+        dbLog.postConstruct();
+        holdWriter();
+
+        // six events fill three quarters, of the next five every second one is kept until the queue is full
+        log(11);
+
+        assertEquals(3L, dbLog.getStatistics().get("dropped"));
+        assertEquals(8, dbLog.getStatistics().get("queueDepth"));
+    }
+
+    @Test
+    void testSampleRateZero_rejected() {
+        ReflectionTestUtils.setField(logDBProperties, "overflowPolicy", OverflowPolicyEnum.SAMPLE);
+        ReflectionTestUtils.setField(logDBProperties, "sampleRate", 0);
+
+        assertThrows(IllegalStateException.class, dbLog::postConstruct);
+    }
+
+    @Test
+    void testBlock_dropsAfterTimeout() throws Exception {
+        ReflectionTestUtils.setField(logDBProperties, "overflowPolicy", OverflowPolicyEnum.BLOCK);
+        dbLog.postConstruct();
+        holdWriter();
+        log(8);
+
+        long start = System.nanoTime();
+        dbLog.info("blocked");
+
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(1L, dbLog.getStatistics().get("dropped"));
+    }
+
+    @Test
+    void testBlock_acceptedWhenWriterDrains() throws Exception {
+        ReflectionTestUtils.setField(logDBProperties, "overflowPolicy", OverflowPolicyEnum.BLOCK);
+        ReflectionTestUtils.setField(logDBProperties, "blockTimeoutMs", 5000L);
+        dbLog.postConstruct();
+        holdWriter();
+        log(8);
+
+        Thread blocked = new Thread(() -> dbLog.info("blocked"));
+        blocked.start();
+        insertRelease.countDown();
+        blocked.join(TimeUnit.SECONDS.toMillis(5));
+
+        assertEquals(0L, dbLog.getStatistics().get("dropped"));
+        dbLog.preDestroy();
+        assertTrue(inserted.contains("blocked"));
+    }
+
+    @Test
+    void testShutdown_drainsQueue() throws Exception {
+        ReflectionTestUtils.setField(logDBProperties, "batchSize", 100);
+        ReflectionTestUtils.setField(logDBProperties, "flushIntervalMs", TimeUnit.MINUTES.toMillis(1));
+        insertRelease.countDown();
+        dbLog.postConstruct();
+
+        // below the batch size the writer is not woken up before the flush interval
+        log(5);
+        dbLog.preDestroy();
+
+        assertEquals(List.of("event-0", "event-1", "event-2", "event-3", "event-4"), inserted);
+        assertEquals(5L, dbLog.getStatistics().get("written"));
+    }
+
+    @Test
+    void testRepositoryFailure_writerKeepsRunning() throws Exception {
+        insertRelease.countDown();
+        this.insertFailure = new IllegalStateException("Connection is not available, request timed out");
+        dbLog.postConstruct();
+
+        dbLog.info("lost");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!Long.valueOf(1L).equals(dbLog.getStatistics().get("failed")) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        dbLog.info("kept");
+        dbLog.preDestroy();
+
+        assertEquals(1L, dbLog.getStatistics().get("failed"));
+        assertEquals(List.of("kept"), inserted);
+    }
+
+    /**
+     * Let the writer take one event and hold it in the insert
+     */
+    private void holdWriter() throws InterruptedException {
+        dbLog.info("held");
+        assertTrue(insertEntered.await(5, TimeUnit.SECONDS));
+    }
+
+    private void log(int events) {
+        for (int i = 0; i < events; i++) {
+            dbLog.info("event-" + i);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.debijenkorf.assignment.service;
+
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import com.debijenkorf.assignment.data.ImageContent;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileSystemStorageServiceTest {
+    private static final byte[] DATA = "image".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    private Path root;
+
+    private FileSystemStorageService storage;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        StorageProperties storageProperties = new StorageProperties();
+        ReflectionTestUtils.setField(storageProperties, "filesystemPath", root.toString());
+        this.storage = new FileSystemStorageService();
+        storage.setStorageProperties(storageProperties);
+        storage.postConstruct();
+    }
+
+    @Test
+    void testUploadAndOpen() throws Exception {
+        storage.upload("thumbnail/abcd/efgh/abcdefghij.jpg", DATA, "image/jpeg");
+
+        ImageContent content = storage.open("thumbnail/abcd/efgh/abcdefghij.jpg");
+        assertTrue(content.isFile());
+        assertEquals(DATA.length, content.getContentLength());
+        assertEquals(DigestUtils.md5Hex(DATA), content.getETag());
+        assertArrayEquals(DATA, content.toByteArray());
+    }
+
+    @Test
+    void testOpenThenReplace_servesOpenedFile() throws Exception {
+        storage.upload("thumbnail/a.jpg", DATA, "image/jpeg");
+        ImageContent content = storage.open("thumbnail/a.jpg");
+
+        storage.upload("thumbnail/a.jpg", "replaced".getBytes(StandardCharsets.UTF_8), "image/jpeg");
+        storage.delete("thumbnail/a.jpg");
+
+        assertEquals(DigestUtils.md5Hex(DATA), content.getETag());
+        assertArrayEquals(DATA, content.toByteArray());
+    }
+
+    @Test
+    void testReplaceDuringOpen_validatorsMatchOpenedFile() throws Exception {
+        byte[] other = "another image".getBytes(StandardCharsets.UTF_8);
+        storage.upload("thumbnail/a.jpg", DATA, "image/jpeg");
+
+        Thread writer = new Thread(() -> {
+            try {
+                for (int i = 0; i < 200; i++) {
+                    storage.upload("thumbnail/a.jpg", i % 2 == 0 ? other : DATA, "image/jpeg");
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        writer.start();
+        while (writer.isAlive()) {
+            try (ImageContent content = storage.open("thumbnail/a.jpg")) {
+                byte[] read = content.toByteArray();
+                assertEquals(read.length, content.getContentLength());
+                assertEquals(DigestUtils.md5Hex(read), content.getETag());
+            }
+        }
+        writer.join();
+    }
+
+    @Test
+    void testStat_usesDigestFromUpload() throws Exception {
+        storage.upload("thumbnail/a.jpg", DATA, "image/jpeg");
+        // changed in place, the file keeps the digest it was uploaded with, so it is not hashed again
+        Files.write(root.resolve("thumbnail/a.jpg"), "IMAGE".getBytes(StandardCharsets.UTF_8));
+
+        assertEquals(DigestUtils.md5Hex(DATA), storage.stat("thumbnail/a.jpg").getETag());
+    }
+
+    @Test
+    void testMissingFile_notFound() {
+        AmazonS3Exception e = assertThrows(AmazonS3Exception.class, () -> storage.stat("thumbnail/missing.jpg"));
+        assertEquals(404, e.getStatusCode());
+    }
+
+    @Test
+    void testListAndDelete() throws Exception {
+        storage.upload("thumbnail/ab/cd/a.jpg", DATA, "image/jpeg");
+        storage.upload("thumbnail/ab/ef/b.jpg", DATA, "image/jpeg");
+        storage.upload("crop/ab/cd/a.jpg", DATA, "image/jpeg");
+
+        List<String> paths = new ArrayList<>();
+        storage.list("thumbnail/ab/c", paths::add);
+        assertEquals(List.of("thumbnail/ab/cd/a.jpg"), paths);
+
+        assertTrue(storage.delete(List.of("thumbnail/ab/cd/a.jpg", "thumbnail/ab/ef/b.jpg")).isEmpty());
+        paths.clear();
+        storage.list("", paths::add);
+        assertEquals(List.of("crop/ab/cd/a.jpg"), paths);
+    }
+
+    @Test
+    void testPathOutsideRoot_rejected() {
+        assertThrows(ResponseStatusException.class, () -> storage.download("../outside.jpg"));
+    }
+}
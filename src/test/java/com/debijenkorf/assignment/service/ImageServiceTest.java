@@ -0,0 +1,459 @@
+package com.debijenkorf.assignment.service;
+
+import com.debijenkorf.assignment.app.configuration.CacheProperties;
+import com.debijenkorf.assignment.app.configuration.LogDBProperties;
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import com.debijenkorf.assignment.cache.DiskCache;
+import com.debijenkorf.assignment.cache.ExistenceIndex;
+import com.debijenkorf.assignment.cache.ImageCache;
+import com.debijenkorf.assignment.data.ImageContent;
+import com.debijenkorf.assignment.data.ImageType;
+import com.debijenkorf.assignment.enums.FlushModeEnum;
+import com.debijenkorf.assignment.exception.ServiceOverloadedException;
+import com.debijenkorf.assignment.strategy.S3DirectoryStrategy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ImageServiceTest {
+    private static final byte[] ORIGINAL = "original".getBytes(StandardCharsets.UTF_8);
+    private static final String REFERENCE = "abcdefghij.jpg";
+
+    @TempDir
+    private Path root;
+
+    private StorageProperties storageProperties;
+    private FileSystemStorageService storage;
+    private ImageCache imageCache;
+    private ExistenceIndex existenceIndex;
+    private ImageService imageService;
+
+    // renders wait for this latch, so a test can hold them while it checks what is served meanwhile
+    private volatile CountDownLatch renderRelease = new CountDownLatch(0);
+    private final AtomicInteger renders = new AtomicInteger();
+    private final Set<String> renderedTypes = ConcurrentHashMap.newKeySet();
+    private volatile String[] fanOutTypes = new String[0];
+    private volatile int version = 1;
+    private volatile RuntimeException renderFailure;
+    private final Map<String, byte[]> asyncStored = new ConcurrentHashMap<>();
+    // runs before the storage deletes files, e.g. a request that reads the image in the meantime
+    private volatile Runnable beforeDelete = () -> { };
+    // paths the storage fails to delete, with the reason
+    private final Map<String, String> deleteFailures = new ConcurrentHashMap<>();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        this.storageProperties = new StorageProperties();
+        ReflectionTestUtils.setField(storageProperties, "filesystemPath", root.toString());
+        ReflectionTestUtils.setField(storageProperties, "asyncMissThreads", 1);
+        ReflectionTestUtils.setField(storageProperties, "asyncMissQueueCapacity", 1);
+        ReflectionTestUtils.setField(storageProperties, "writeBehindThreads", 1);
+        ReflectionTestUtils.setField(storageProperties, "writeBehindQueueCapacity", 10);
+        ReflectionTestUtils.setField(storageProperties, "writeBehindMaxAttempts", 1);
+        ReflectionTestUtils.setField(storageProperties, "flushMode", FlushModeEnum.DELETE);
+        ReflectionTestUtils.setField(storageProperties, "flushRefreshThreads", 1);
+        ReflectionTestUtils.setField(storageProperties, "flushRefreshQueueCapacity", 10);
+        ReflectionTestUtils.setField(storageProperties, "flushParallelism", 1);
+
+        CacheProperties cacheProperties = new CacheProperties();
+        ReflectionTestUtils.setField(cacheProperties, "memoryMaxBytes", 1024L * 1024);
+        ReflectionTestUtils.setField(cacheProperties, "memoryMaxEntryBytes", 1024 * 1024);
+
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        DbLogger dbLog = new DbLogger();
+        dbLog.setLogDBProperties(new LogDBProperties());
+
+        this.storage = new FileSystemStorageService() {
+            @Override
+            public Map<String, String> delete(Collection<String> paths) {
+                beforeDelete.run();
+                Map<String, String> failed = new HashMap<>(super.delete(paths.stream()
+                        .filter(x -> !deleteFailures.containsKey(x))
+                        .toList()));
+                paths.stream().filter(deleteFailures::containsKey).forEach(x -> failed.put(x, deleteFailures.get(x)));
+                return failed;
+            }
+        };
+        storage.setStorageProperties(storageProperties);
+        storage.postConstruct();
+
+        this.imageCache = new ImageCache();
+        imageCache.setCacheProperties(cacheProperties);
+        imageCache.setMeterRegistry(meterRegistry);
+        imageCache.postConstruct();
+
+        DiskCache diskCache = new DiskCache();
+        diskCache.setCacheProperties(cacheProperties);
+        diskCache.postConstruct();
+
+        this.existenceIndex = new ExistenceIndex();
+        existenceIndex.setStorageProperties(storageProperties);
+        existenceIndex.setStorageService(storage);
+
+        WriteBehindService writeBehind = new WriteBehindService();
+        writeBehind.setStorageProperties(storageProperties);
+        writeBehind.setStorageService(storage);
+        writeBehind.setDbLog(dbLog);
+        writeBehind.postConstruct();
+
+        this.imageService = new ImageService();
+        imageService.setStorageProperties(storageProperties);
+        imageService.setStorageService(storage);
+        imageService.setAsyncStorageService(new InMemoryAsyncStorage());
+        imageService.setSourceService(new SourceService() {
+            @Override
+            public byte[] getImage(String filename) {
+                return ORIGINAL;
+            }
+
+            @Override
+            public void forgetMissing(String filename) {
+            }
+        });
+        imageService.setRenderService(new RenderService() {
+            @Override
+            public byte[] render(byte[] original, ImageType imageType) {
+                return renderImage(imageType);
+            }
+
+            @Override
+            public Map<String, byte[]> render(byte[] original, Map<String, ImageType> imageTypes) {
+                renderedTypes.addAll(imageTypes.keySet());
+                Map<String, byte[]> rendered = new ConcurrentHashMap<>();
+                imageTypes.forEach((name, imageType) -> rendered.put(name, renderImage(imageType)));
+                return rendered;
+            }
+
+            @Override
+            public String[] getFanOutTypes() {
+                return fanOutTypes;
+            }
+
+            @Override
+            public long getRetryAfterSeconds() {
+                return 1;
+            }
+        });
+        imageService.setWriteBehindService(writeBehind);
+        imageService.setImageCache(imageCache);
+        imageService.setDiskCache(diskCache);
+        imageService.setExistenceIndex(existenceIndex);
+        imageService.setDirectoryStrategy(new S3DirectoryStrategy());
+        imageService.setMeterRegistry(meterRegistry);
+        imageService.setDbLog(dbLog);
+        imageService.postConstruct();
+    }
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        renderRelease.countDown();
+        // refreshes still running would write into the removed directory
+        awaitRefreshes();
+        imageService.preDestroy();
+        existenceIndex.preDestroy();
+    }
+
+    @Test
+    void testAsyncMiss_storedThroughAsyncStorage() throws Exception {
+        ImageContent content = imageService.getImageAsync("thumbnail", REFERENCE).get(5, TimeUnit.SECONDS);
+
+        assertArrayEquals(rendered(1), content.getBytes());
+        assertArrayEquals(rendered(1), asyncStored.get("thumbnail/abcd/efgh/abcdefghij.jpg"));
+        assertArrayEquals(rendered(1), imageCache.get("thumbnail", REFERENCE));
+    }
+
+    @Test
+    void testAsyncMissQueueFull_serviceOverloaded() throws Exception {
+        this.renderRelease = new CountDownLatch(1);
+
+        // one miss is rendered and one is queued, the queue has no room for a third
+        CompletableFuture<ImageContent> rendering = imageService.getImageAsync("thumbnail", "aaaaaaaaaa.jpg");
+        CompletableFuture<ImageContent> queued = imageService.getImageAsync("thumbnail", "bbbbbbbbbb.jpg");
+        CompletableFuture<ImageContent> rejected = imageService.getImageAsync("thumbnail", "cccccccccc.jpg");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(ServiceOverloadedException.class, e.getCause());
+
+        renderRelease.countDown();
+        assertNotNull(rendering.get(5, TimeUnit.SECONDS));
+        assertNotNull(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testReadDuringFlush_notCachedAfterFlush() {
+        imageService.getImage("thumbnail", REFERENCE);
+        // a request between the invalidation and the delete reads the stored image and caches it again
+        this.beforeDelete = () -> imageService.getImage("thumbnail", REFERENCE);
+
+        imageService.flushImage("thumbnail", REFERENCE, FlushModeEnum.DELETE);
+
+        assertNull(imageCache.get("thumbnail", REFERENCE));
+    }
+
+    @Test
+    void testFanOut_storedSiblingsNotRendered() throws Exception {
+        this.fanOutTypes = new String[]{"thumbnail", "crop", "skew"};
+        storage.upload("crop/abcd/efgh/abcdefghij.jpg", rendered(1), "image/jpeg");
+
+        assertArrayEquals(rendered(1), imageService.getImage("thumbnail", REFERENCE));
+
+        assertEquals(Set.of("thumbnail", "skew"), renderedTypes);
+        // the sibling is stored in the background
+        assertTrue(await(() -> Files.exists(root.resolve("skew/abcd/efgh/abcdefghij.jpg"))));
+    }
+
+    @Test
+    void testBulkDelete_allDeleted() {
+        imageService.getImage("thumbnail", "aaaaaaaaaa.jpg");
+        imageService.getImage("thumbnail", "bbbbbbbbbb.jpg");
+
+        Map<String, String> failed = imageService.flushImages("thumbnail",
+                List.of("aaaaaaaaaa.jpg", "bbbbbbbbbb.jpg"), FlushModeEnum.DELETE);
+
+        assertTrue(failed.isEmpty());
+        assertFalse(Files.exists(root.resolve("thumbnail/aaaa/aaaa/aaaaaaaaaa.jpg")));
+        assertFalse(Files.exists(root.resolve("thumbnail/bbbb/bbbb/bbbbbbbbbb.jpg")));
+    }
+
+    @Test
+    void testBulkDeletePartialFailure_reported() {
+        imageService.getImage("thumbnail", "aaaaaaaaaa.jpg");
+        imageService.getImage("thumbnail", "bbbbbbbbbb.jpg");
+        deleteFailures.put("thumbnail/bbbb/bbbb/bbbbbbbbbb.jpg", "Access Denied");
+
+        Map<String, String> failed = imageService.flushImages("thumbnail",
+                List.of("aaaaaaaaaa.jpg", "bbbbbbbbbb.jpg"), FlushModeEnum.DELETE);
+
+        assertEquals(Map.of("bbbbbbbbbb.jpg", "Access Denied"), failed);
+        assertFalse(Files.exists(root.resolve("thumbnail/aaaa/aaaa/aaaaaaaaaa.jpg")));
+    }
+
+    @Test
+    void testFlushFailure_serverError() {
+        imageService.getImage("thumbnail", REFERENCE);
+        deleteFailures.put("thumbnail/abcd/efgh/abcdefghij.jpg", "Access Denied");
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> imageService.flushImage("thumbnail", REFERENCE, FlushModeEnum.DELETE));
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, e.getStatusCode());
+    }
+
+    @Test
+    void testFlushRefreshQueueFull_serviceOverloaded() {
+        this.renderRelease = new CountDownLatch(1);
+
+        // one refresh is rendered and ten are queued, the queue has no room for another one
+        List<String> filenames = IntStream.range(0, 11).mapToObj(x -> "aaaaaaaa" + (10 + x) + ".jpg").toList();
+        assertTrue(imageService.flushImages("thumbnail", filenames, FlushModeEnum.REFRESH).isEmpty());
+
+        assertThrows(ServiceOverloadedException.class,
+                () -> imageService.flushImage("thumbnail", REFERENCE, FlushModeEnum.REFRESH));
+    }
+
+    @Test
+    void testRefresh_oldImageServedUntilSwap() throws Exception {
+        imageService.getImage("thumbnail", REFERENCE);
+        this.version = 2;
+        this.renderRelease = new CountDownLatch(1);
+
+        imageService.flushImage("thumbnail", REFERENCE, FlushModeEnum.REFRESH);
+        assertTrue(await(() -> renders.get() == 2));
+        assertArrayEquals(rendered(1), imageService.getImage("thumbnail", REFERENCE));
+
+        renderRelease.countDown();
+        awaitRefreshes();
+        assertArrayEquals(rendered(2), imageService.getImage("thumbnail", REFERENCE));
+        assertArrayEquals(rendered(2), Files.readAllBytes(root.resolve("thumbnail/abcd/efgh/abcdefghij.jpg")));
+    }
+
+    @Test
+    void testRefreshDuplicate_renderedOnce() throws Exception {
+        imageService.getImage("thumbnail", REFERENCE);
+        this.renderRelease = new CountDownLatch(1);
+
+        imageService.flushImage("thumbnail", REFERENCE, FlushModeEnum.REFRESH);
+        imageService.flushImage("thumbnail", REFERENCE, FlushModeEnum.REFRESH);
+        renderRelease.countDown();
+        awaitRefreshes();
+
+        assertEquals(2, renders.get());
+    }
+
+    @Test
+    void testRefreshFailure_oldImageKept() throws Exception {
+        imageService.getImage("thumbnail", REFERENCE);
+        this.version = 2;
+        this.renderFailure = new IllegalStateException("broken");
+
+        imageService.flushImage("thumbnail", REFERENCE, FlushModeEnum.REFRESH);
+        awaitRefreshes();
+
+        assertArrayEquals(rendered(1), imageService.getImage("thumbnail", REFERENCE));
+        assertArrayEquals(rendered(1), Files.readAllBytes(root.resolve("thumbnail/abcd/efgh/abcdefghij.jpg")));
+    }
+
+    /**
+     * Wait for the queued refreshes, no new ones are accepted afterwards
+     */
+    private void awaitRefreshes() throws InterruptedException {
+        ThreadPoolExecutor refreshExecutor =
+                (ThreadPoolExecutor) ReflectionTestUtils.getField(imageService, "refreshExecutor");
+        refreshExecutor.shutdown();
+        assertTrue(refreshExecutor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testExistenceIndexVerified_storedByOtherNodeNotRendered() throws Exception {
+        loadExistenceIndex(true);
+        // stored after the listing, as by another node
+        storage.upload("thumbnail/abcd/efgh/abcdefghij.jpg", rendered(2), "image/jpeg");
+
+        assertArrayEquals(rendered(2), imageService.getImage("thumbnail", REFERENCE));
+
+        assertEquals(0, renders.get());
+        assertEquals(1L, existenceIndex.getStatistics().get("missed"));
+        assertTrue(existenceIndex.mightExist("thumbnail/abcd/efgh/abcdefghij.jpg"));
+    }
+
+    @Test
+    void testExistenceIndexVerifiedAsync_storedByOtherNodeNotRendered() throws Exception {
+        loadExistenceIndex(true);
+        asyncStored.put("thumbnail/abcd/efgh/abcdefghij.jpg", rendered(2));
+
+        ImageContent content = imageService.getImageAsync("thumbnail", REFERENCE).get(5, TimeUnit.SECONDS);
+
+        assertArrayEquals(rendered(2), content.getBytes());
+        assertEquals(0, renders.get());
+        assertEquals(1L, existenceIndex.getStatistics().get("missed"));
+    }
+
+    @Test
+    void testExistenceIndexNotVerified_storedByOtherNodeRendered() throws Exception {
+        loadExistenceIndex(false);
+        storage.upload("thumbnail/abcd/efgh/abcdefghij.jpg", rendered(2), "image/jpeg");
+
+        assertArrayEquals(rendered(1), imageService.getImage("thumbnail", REFERENCE));
+
+        assertEquals(1, renders.get());
+    }
+
+    @Test
+    void testContentTypeOfOriginal_recognizedFromSlice() {
+        byte[] png = {(byte) 0x89, 'P', 'N', 'G', 0, 1, 2, 3};
+
+        assertEquals("image/png", imageService.getContentType("original", ImageContent.of(png).slice(4, 7)));
+        assertEquals("image/jpeg", imageService.getContentType("thumbnail", ImageContent.of(png)));
+    }
+
+    @Test
+    void testContentTypeOfStreamedOriginal_storedType() {
+        ImageContent streamed = ImageContent.of(new ByteArrayInputStream(new byte[4]), 4, "etag",
+                ImageContent.UNKNOWN_LAST_MODIFIED, "image/png");
+
+        assertEquals("image/png", imageService.getContentType("original", streamed));
+    }
+
+    private void loadExistenceIndex(boolean verifyNegatives) throws InterruptedException {
+        ReflectionTestUtils.setField(storageProperties, "existenceIndexEnabled", true);
+        ReflectionTestUtils.setField(storageProperties, "existenceIndexExpectedKeysPerType", 1000L);
+        ReflectionTestUtils.setField(storageProperties, "existenceIndexFalsePositiveProbability", 0.01);
+        ReflectionTestUtils.setField(storageProperties, "existenceIndexVerifyNegatives", verifyNegatives);
+        existenceIndex.postConstruct();
+        assertTrue(await(() -> Boolean.TRUE.equals(existenceIndex.getStatistics().get("loaded"))));
+    }
+
+    private boolean await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                return false;
+            }
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    private byte[] renderImage(ImageType imageType) {
+        renders.incrementAndGet();
+        try {
+            assertTrue(renderRelease.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (renderFailure != null) {
+            throw renderFailure;
+        }
+        return rendered(version);
+    }
+
+    private byte[] rendered(int renderVersion) {
+        return ("rendered-" + renderVersion).getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Keeps the images of the async path in memory, the synchronous path stores in the filesystem storage
+     */
+    private class InMemoryAsyncStorage implements AsyncStorageService {
+        @Override
+        public CompletableFuture<byte[]> download(String path) {
+            byte[] image = asyncStored.get(path);
+            return image != null ? CompletableFuture.completedFuture(image)
+                    : CompletableFuture.failedFuture(new CompletionException(new NotFound()));
+        }
+
+        @Override
+        public CompletableFuture<Void> upload(String path, byte[] data, String contentType) {
+            asyncStored.put(path, data);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public CompletableFuture<Void> delete(String path) {
+            asyncStored.remove(path);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public boolean isNotFound(Throwable e) {
+            Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+            return cause instanceof NotFound;
+        }
+    }
+
+    private static class NotFound extends RuntimeException {
+    }
+}
@@ -0,0 +1,218 @@
+package com.debijenkorf.assignment.service;
+
+import com.debijenkorf.assignment.app.configuration.LogDBProperties;
+import com.debijenkorf.assignment.app.configuration.PregenerationProperties;
+import com.debijenkorf.assignment.app.configuration.RenderProperties;
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import com.debijenkorf.assignment.cache.ExistenceIndex;
+import com.debijenkorf.assignment.data.ImageType;
+import com.debijenkorf.assignment.enums.ImageTypeEnum;
+import com.debijenkorf.assignment.enums.ScaleTypeEnum;
+import com.debijenkorf.assignment.strategy.HashedDirectoryStrategy;
+import com.debijenkorf.assignment.strategy.S3DirectoryStrategy;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.image.BufferedImage;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.debijenkorf.assignment.util.ImageUtil.toByteArray;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PregenerationServiceTest {
+    private static final ImageType ORIGINAL_TYPE = new ImageType(0, 0, 100, "#FFFFFF", ImageTypeEnum.JPG,
+            ScaleTypeEnum.SKEW);
+    private static final ImageType THUMBNAIL = new ImageType(10, 10, 90, "#FFFFFF", ImageTypeEnum.JPG,
+            ScaleTypeEnum.FILL);
+
+    @TempDir
+    private Path root;
+
+    private PregenerationProperties pregenerationProperties;
+    private FileSystemStorageService storage;
+    private HashedDirectoryStrategy directoryStrategy;
+    private PregenerationService pregenerationService;
+    private byte[] original;
+
+    private final Set<String> fetched = ConcurrentHashMap.newKeySet();
+    private final Set<String> downloaded = ConcurrentHashMap.newKeySet();
+    private final Set<String> invalidated = ConcurrentHashMap.newKeySet();
+    private volatile Map<String, ImageType> widthVariants = Map.of();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        this.original = toByteArray(new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB), "jpg");
+
+        this.pregenerationProperties = new PregenerationProperties();
+        for (String threads : List.of("fetchThreads", "decodeThreads", "renderThreads", "encodeThreads",
+                "uploadThreads")) {
+            ReflectionTestUtils.setField(pregenerationProperties, threads, 1);
+        }
+        ReflectionTestUtils.setField(pregenerationProperties, "queueCapacity", 2);
+        ReflectionTestUtils.setField(pregenerationProperties, "skipExisting", true);
+        ReflectionTestUtils.setField(pregenerationProperties, "journalPath", root.resolve("journal").toString());
+
+        StorageProperties storageProperties = new StorageProperties();
+        ReflectionTestUtils.setField(storageProperties, "filesystemPath", root.resolve("storage").toString());
+        ReflectionTestUtils.setField(storageProperties, "directoryDualRead", true);
+
+        this.storage = new FileSystemStorageService();
+        storage.setStorageProperties(storageProperties);
+        storage.postConstruct();
+
+        this.directoryStrategy = new HashedDirectoryStrategy();
+        directoryStrategy.setStorageProperties(storageProperties);
+        directoryStrategy.setLegacyStrategy(new S3DirectoryStrategy());
+
+        ExistenceIndex existenceIndex = new ExistenceIndex();
+        existenceIndex.setStorageProperties(storageProperties);
+
+        RenderProperties renderProperties = new RenderProperties();
+        ReflectionTestUtils.setField(renderProperties, "encodeBufferBytes", 1024);
+        ImageEncoder imageEncoder = new ImageEncoder();
+        imageEncoder.setRenderProperties(renderProperties);
+        imageEncoder.setMeterRegistry(new SimpleMeterRegistry());
+
+        DbLogger dbLog = new DbLogger();
+        dbLog.setLogDBProperties(new LogDBProperties());
+
+        this.pregenerationService = new PregenerationService();
+        pregenerationService.setPregenerationProperties(pregenerationProperties);
+        pregenerationService.setImageService(new ImageService() {
+            @Override
+            public Map<String, ImageType> getImageTypes() {
+                Map<String, ImageType> imageTypes = new LinkedHashMap<>();
+                imageTypes.put(DEFAULT_IMAGE_TYPE, ORIGINAL_TYPE);
+                imageTypes.put("thumbnail", THUMBNAIL);
+                return imageTypes;
+            }
+
+            @Override
+            public Map<String, ImageType> getWidthVariants() {
+                return widthVariants;
+            }
+
+            @Override
+            public byte[] getImageFromS3(String type, String filename) {
+                downloaded.add(filename);
+                // no original is stored yet, it is fetched from the source
+                return new byte[0];
+            }
+
+            @Override
+            public String getContentType(String type, byte[] image) {
+                return "image/jpeg";
+            }
+
+            @Override
+            public void invalidateImage(String type, String filename) {
+                invalidated.add(type + "/" + filename);
+            }
+        });
+        pregenerationService.setSourceService(new SourceService() {
+            @Override
+            public byte[] getImage(String filename) {
+                fetched.add(filename);
+                return original;
+            }
+        });
+        pregenerationService.setStorageService(storage);
+        pregenerationService.setDirectoryStrategy(directoryStrategy);
+        pregenerationService.setExistenceIndex(existenceIndex);
+        pregenerationService.setResizeEngine((origin, imageType) ->
+                new BufferedImage(imageType.getWidth(), imageType.getHeight(), BufferedImage.TYPE_INT_RGB));
+        pregenerationService.setImageEncoder(imageEncoder);
+        pregenerationService.setDbLog(dbLog);
+    }
+
+    @Test
+    void testResume_skipsJournaledReferences() throws Exception {
+        Files.write(root.resolve("journal"), List.of("aaaaaaaaaa.jpg"));
+
+        Map<String, Object> status = pregenerationService.run(List.of("aaaaaaaaaa.jpg", "bbbbbbbbbb.jpg"), true);
+
+        assertEquals(Set.of("bbbbbbbbbb.jpg"), fetched);
+        assertEquals(1L, status.get("skipped"));
+        assertEquals(1L, status.get("completed"));
+        assertTrue(Files.exists(root.resolve("storage")
+                .resolve(directoryStrategy.getDirectoryStrategy("thumbnail", "bbbbbbbbbb.jpg"))));
+        assertFalse(Files.exists(root.resolve("journal")));
+    }
+
+    @Test
+    void testWidthVariants_rendered() {
+        this.widthVariants = Map.of("thumbnail-w5", THUMBNAIL.withWidth(5));
+
+        Map<String, Object> status = pregenerationService.run(List.of("aaaaaaaaaa.jpg"), false);
+
+        assertEquals(1L, status.get("completed"));
+        assertTrue(Files.exists(root.resolve("storage")
+                .resolve(directoryStrategy.getDirectoryStrategy("thumbnail-w5", "aaaaaaaaaa.jpg"))));
+    }
+
+    @Test
+    void testWithoutResume_journalStartsOver() throws Exception {
+        Files.write(root.resolve("journal"), List.of("aaaaaaaaaa.jpg"));
+
+        Map<String, Object> status = pregenerationService.run(List.of("aaaaaaaaaa.jpg"), false);
+
+        assertEquals(Set.of("aaaaaaaaaa.jpg"), fetched);
+        assertEquals(1L, status.get("completed"));
+        assertFalse(Files.exists(root.resolve("journal")));
+    }
+
+    @Test
+    void testRunAfterFlush_renderedAgain() throws Exception {
+        Path thumbnail = root.resolve("storage")
+                .resolve(directoryStrategy.getDirectoryStrategy("thumbnail", "aaaaaaaaaa.jpg"));
+        pregenerationService.run(List.of("aaaaaaaaaa.jpg"), true);
+        assertTrue(Files.exists(thumbnail));
+
+        // flushed after the run
+        storage.delete(directoryStrategy.getDirectoryStrategy("thumbnail", "aaaaaaaaaa.jpg"));
+        fetched.clear();
+
+        Map<String, Object> status = pregenerationService.run(List.of("aaaaaaaaaa.jpg"), true);
+
+        assertEquals(0L, status.get("skipped"));
+        assertEquals(1L, status.get("completed"));
+        assertEquals(Set.of("aaaaaaaaaa.jpg"), fetched);
+        assertTrue(Files.exists(thumbnail));
+    }
+
+    @Test
+    void testSkipExisting_storedOnLegacyPath() throws Exception {
+        storage.upload(new S3DirectoryStrategy().getDirectoryStrategy("thumbnail", "aaaaaaaaaa.jpg"),
+                "stored".getBytes(StandardCharsets.UTF_8), "image/jpeg");
+
+        Map<String, Object> status = pregenerationService.run(List.of("aaaaaaaaaa.jpg"), false);
+
+        assertEquals(1L, status.get("skipped"));
+        assertFalse(Files.exists(root.resolve("storage")
+                .resolve(directoryStrategy.getDirectoryStrategy("thumbnail", "aaaaaaaaaa.jpg"))));
+        // nothing to render, so the original is not downloaded
+        assertTrue(downloaded.isEmpty());
+        assertTrue(fetched.isEmpty());
+    }
+
+    @Test
+    void testUpload_invalidatesCachedImages() {
+        ReflectionTestUtils.setField(pregenerationProperties, "skipExisting", false);
+
+        pregenerationService.run(List.of("aaaaaaaaaa.jpg"), false);
+
+        assertEquals(Set.of("thumbnail/aaaaaaaaaa.jpg", "original/aaaaaaaaaa.jpg"), invalidated);
+    }
+}
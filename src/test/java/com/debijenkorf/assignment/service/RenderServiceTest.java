@@ -0,0 +1,160 @@
+package com.debijenkorf.assignment.service;
+
+import com.debijenkorf.assignment.app.configuration.LogDBProperties;
+import com.debijenkorf.assignment.app.configuration.RenderProperties;
+import com.debijenkorf.assignment.data.ImageType;
+import com.debijenkorf.assignment.enums.ImageTypeEnum;
+import com.debijenkorf.assignment.enums.ScaleTypeEnum;
+import com.debijenkorf.assignment.exception.ServiceOverloadedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.debijenkorf.assignment.util.ImageUtil.toByteArray;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RenderServiceTest {
+    private static final ImageType THUMBNAIL = new ImageType(10, 10, 90, "#FFFFFF", ImageTypeEnum.JPG, ScaleTypeEnum.FILL);
+    private static final ImageType BROKEN = new ImageType(20, 20, 90, "#FFFFFF", ImageTypeEnum.JPG, ScaleTypeEnum.FILL);
+
+    private RenderProperties renderProperties;
+    private RenderService renderService;
+    private SimpleMeterRegistry meterRegistry;
+
+    // resizes wait for this latch when it is set, ignoring interrupts like the image libraries do
+    private volatile CountDownLatch resizeRelease;
+    private final CountDownLatch resizeEntered = new CountDownLatch(1);
+
+    @BeforeEach
+    public void setUp() {
+        this.renderProperties = new RenderProperties();
+        ReflectionTestUtils.setField(renderProperties, "encodeBufferBytes", 1024);
+        ReflectionTestUtils.setField(renderProperties, "executorThreads", 1);
+        ReflectionTestUtils.setField(renderProperties, "executorQueueCapacity", 1);
+        ReflectionTestUtils.setField(renderProperties, "executorTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(renderProperties, "retryAfterSeconds", 3L);
+        ReflectionTestUtils.setField(renderProperties, "fanOutParallelism", 2);
+
+        this.meterRegistry = new SimpleMeterRegistry();
+        DbLogger dbLog = new DbLogger();
+        dbLog.setLogDBProperties(new LogDBProperties());
+
+        ImageEncoder imageEncoder = new ImageEncoder();
+        imageEncoder.setRenderProperties(renderProperties);
+        imageEncoder.setMeterRegistry(meterRegistry);
+
+        this.renderService = new RenderService();
+        renderService.setRenderProperties(renderProperties);
+        renderService.setResizeEngine((origin, imageType) -> {
+            if (imageType == BROKEN) {
+                throw new IllegalStateException("broken");
+            }
+            resizeEntered.countDown();
+            if (resizeRelease != null) {
+                awaitUninterruptibly(resizeRelease);
+            }
+            return new BufferedImage(imageType.getWidth(), imageType.getHeight(), BufferedImage.TYPE_INT_RGB);
+        });
+        renderService.setImageEncoder(imageEncoder);
+        renderService.setMeterRegistry(meterRegistry);
+        renderService.setDbLog(dbLog);
+        renderService.postConstruct();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (resizeRelease != null) {
+            resizeRelease.countDown();
+        }
+        renderService.preDestroy();
+    }
+
+    @Test
+    void testFanOut_failedTypeLeftOut() throws Exception {
+        Map<String, byte[]> rendered = renderService.render(original(),
+                Map.of("thumbnail", THUMBNAIL, "broken", BROKEN));
+
+        assertEquals(1, rendered.size());
+        assertNotNull(rendered.get("thumbnail"));
+    }
+
+    @Test
+    void testQueueFull_rejectedWithRetryAfter() throws Exception {
+        this.resizeRelease = new CountDownLatch(1);
+        byte[] original = original();
+
+        // one render holds the only thread, the next one fills the queue
+        CompletableFuture<byte[]> running = CompletableFuture.supplyAsync(() -> renderService.render(original, THUMBNAIL));
+        assertTrue(resizeEntered.await(5, TimeUnit.SECONDS));
+        CompletableFuture<byte[]> queued = CompletableFuture.supplyAsync(() -> renderService.render(original, THUMBNAIL));
+        awaitStatistic("queueDepth", 1);
+
+        ServiceOverloadedException e = assertThrows(ServiceOverloadedException.class,
+                () -> renderService.render(original, THUMBNAIL));
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, e.getStatusCode());
+        assertEquals("3", e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(1L, renderService.getStatistics().get("rejected"));
+
+        resizeRelease.countDown();
+        assertNotNull(running.get(5, TimeUnit.SECONDS));
+        assertNotNull(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testTimeout_remainingStagesSkipped() throws Exception {
+        ReflectionTestUtils.setField(renderProperties, "executorTimeoutMs", 100L);
+        this.resizeRelease = new CountDownLatch(1);
+
+        ServiceOverloadedException e = assertThrows(ServiceOverloadedException.class,
+                () -> renderService.render(original(), THUMBNAIL));
+        assertEquals("3", e.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(1L, renderService.getStatistics().get("timedOut"));
+
+        // the resize can not be interrupted, but the encode after it is skipped
+        resizeRelease.countDown();
+        awaitStatistic("abandoned", 1L);
+        assertEquals(1.0, meterRegistry.get("render.abandoned").tag("stage", "encode").counter().count());
+        assertNull(meterRegistry.find("render.encode").timer());
+    }
+
+    private void awaitStatistic(String name, Object expected) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!expected.equals(renderService.getStatistics().get(name)) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(expected, renderService.getStatistics().get(name));
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] original() throws Exception {
+        return toByteArray(new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB), "jpg");
+    }
+}
@@ -0,0 +1,234 @@
+package com.debijenkorf.assignment.service;
+
+import com.amazonaws.SdkClientException;
+import com.amazonaws.services.s3.AbstractAmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadResult;
+import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadResult;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
+import com.amazonaws.services.s3.model.PutObjectRequest;
+import com.amazonaws.services.s3.model.PutObjectResult;
+import com.amazonaws.services.s3.model.S3Object;
+import com.amazonaws.services.s3.model.UploadPartRequest;
+import com.amazonaws.services.s3.model.UploadPartResult;
+import com.debijenkorf.assignment.app.configuration.S3Properties;
+import com.debijenkorf.assignment.data.ImageContent;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class S3ServiceTest {
+    private static final int PART_SIZE = 5 * 1024 * 1024;
+
+    private S3Service s3Service;
+    private final FakeS3 s3 = new FakeS3();
+
+    @BeforeEach
+    public void setUp() {
+        S3Properties s3Properties = new S3Properties();
+        ReflectionTestUtils.setField(s3Properties, "accessKey", "key");
+        ReflectionTestUtils.setField(s3Properties, "secretKey", "secret");
+        ReflectionTestUtils.setField(s3Properties, "region", "eu-west-1");
+        ReflectionTestUtils.setField(s3Properties, "bucket", "images");
+        ReflectionTestUtils.setField(s3Properties, "multipartThresholdBytes", PART_SIZE + 1);
+        ReflectionTestUtils.setField(s3Properties, "multipartPartSizeBytes", PART_SIZE);
+        ReflectionTestUtils.setField(s3Properties, "multipartConcurrency", 2);
+
+        this.s3Service = new S3Service();
+        s3Service.setS3Properties(s3Properties);
+        s3Service.setMeterRegistry(new SimpleMeterRegistry());
+        s3Service.postConstruct();
+        ReflectionTestUtils.setField(s3Service, "s3client", s3);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        s3Service.preDestroy();
+    }
+
+    @Test
+    void testUpload_md5InHeaderAndMetadata() throws Exception {
+        byte[] data = "image".getBytes();
+
+        s3Service.upload("thumbnail/a.jpg", data, "image/jpeg");
+
+        PutObjectRequest request = s3.puts.get(0);
+        assertEquals(Base64.getEncoder().encodeToString(DigestUtils.md5(data)),
+                request.getMetadata().getContentMD5());
+        assertEquals(DigestUtils.md5Hex(data), request.getMetadata().getUserMetaDataOf(S3Service.MD5_METADATA));
+        assertEquals("image/jpeg", request.getMetadata().getContentType());
+    }
+
+    @Test
+    void testUploadETagMismatch_failed() {
+        s3.putETag = "0123456789abcdef0123456789abcdef";
+
+        assertThrows(IOException.class, () -> s3Service.upload("thumbnail/a.jpg", "image".getBytes(), "image/jpeg"));
+    }
+
+    @Test
+    void testMultipart_partsAndMetadata() throws Exception {
+        byte[] data = image(PART_SIZE * 2 + 10);
+
+        s3Service.upload("original/a.jpg", data, "image/jpeg");
+
+        InitiateMultipartUploadRequest initiate = s3.initiates.get(0);
+        assertEquals(DigestUtils.md5Hex(data), initiate.getObjectMetadata().getUserMetaDataOf(S3Service.MD5_METADATA));
+        assertEquals("image/jpeg", initiate.getObjectMetadata().getContentType());
+
+        assertEquals(3, s3.parts.size());
+        assertArrayEquals(Arrays.copyOfRange(data, 0, PART_SIZE), s3.parts.get(1));
+        assertArrayEquals(Arrays.copyOfRange(data, PART_SIZE, PART_SIZE * 2), s3.parts.get(2));
+        assertArrayEquals(Arrays.copyOfRange(data, PART_SIZE * 2, data.length), s3.parts.get(3));
+
+        List<PartETag> partETags = s3.completes.get(0).getPartETags();
+        assertEquals(List.of(1, 2, 3), partETags.stream().map(PartETag::getPartNumber).toList());
+        assertTrue(s3.aborts.isEmpty());
+    }
+
+    @Test
+    void testMultipartPartFails_aborted() {
+        s3.failingPart = 2;
+
+        assertThrows(IOException.class, () -> s3Service.upload("original/a.jpg", image(PART_SIZE * 2), "image/jpeg"));
+
+        assertEquals(1, s3.aborts.size());
+        assertEquals("upload-1", s3.aborts.get(0).getUploadId());
+        assertTrue(s3.completes.isEmpty());
+    }
+
+    @Test
+    void testOpen_storedContentType() throws Exception {
+        try (ImageContent content = s3Service.open("original/a.png")) {
+            assertTrue(content.isStreamed());
+            assertEquals("image/png", content.getContentType());
+        }
+        try (ImageContent range = s3Service.open("original/a.png", 0, 1)) {
+            assertTrue(range.isStreamed());
+            assertEquals("image/png", range.getContentType());
+        }
+        assertEquals("image/png", s3Service.stat("original/a.png").getContentType());
+    }
+
+    @Test
+    void testSmallPartSize_rejected() {
+        S3Service service = new S3Service();
+        S3Properties s3Properties = new S3Properties();
+        ReflectionTestUtils.setField(s3Properties, "multipartPartSizeBytes", PART_SIZE - 1);
+        service.setS3Properties(s3Properties);
+
+        assertThrows(IllegalStateException.class, service::postConstruct);
+    }
+
+    private static byte[] image(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    /**
+     * Records the upload requests, parts are verified against their Content-MD5 like S3 does
+     */
+    private static class FakeS3 extends AbstractAmazonS3 {
+        private final List<PutObjectRequest> puts = new CopyOnWriteArrayList<>();
+        private final List<InitiateMultipartUploadRequest> initiates = new CopyOnWriteArrayList<>();
+        private final Map<Integer, byte[]> parts = new ConcurrentHashMap<>();
+        private final List<CompleteMultipartUploadRequest> completes = new CopyOnWriteArrayList<>();
+        private final List<AbortMultipartUploadRequest> aborts = new CopyOnWriteArrayList<>();
+        private volatile String putETag;
+        private volatile int failingPart;
+
+        @Override
+        public PutObjectResult putObject(PutObjectRequest request) {
+            puts.add(request);
+            PutObjectResult result = new PutObjectResult();
+            result.setETag(putETag != null ? putETag : request.getMetadata().getUserMetaDataOf(S3Service.MD5_METADATA));
+            return result;
+        }
+
+        @Override
+        public S3Object getObject(String bucketName, String key) {
+            return getObject(new GetObjectRequest(bucketName, key));
+        }
+
+        @Override
+        public S3Object getObject(GetObjectRequest request) {
+            S3Object object = new S3Object();
+            object.setObjectMetadata(getObjectMetadata(request.getBucketName(), request.getKey()));
+            object.setObjectContent(new ByteArrayInputStream("image".getBytes()));
+            return object;
+        }
+
+        @Override
+        public ObjectMetadata getObjectMetadata(String bucketName, String key) {
+            ObjectMetadata metadata = new ObjectMetadata();
+            metadata.setContentLength(5);
+            metadata.setContentType("image/png");
+            return metadata;
+        }
+
+        @Override
+        public InitiateMultipartUploadResult initiateMultipartUpload(InitiateMultipartUploadRequest request) {
+            initiates.add(request);
+            InitiateMultipartUploadResult result = new InitiateMultipartUploadResult();
+            result.setUploadId("upload-" + initiates.size());
+            return result;
+        }
+
+        @Override
+        public UploadPartResult uploadPart(UploadPartRequest request) {
+            if (request.getPartNumber() == failingPart) {
+                throw new SdkClientException("Connection reset");
+            }
+
+            byte[] part;
+            try {
+                part = request.getInputStream().readAllBytes();
+            } catch (IOException e) {
+                throw new SdkClientException(e);
+            }
+            assertEquals(request.getPartSize(), part.length);
+            assertEquals(request.getMd5Digest(), Base64.getEncoder().encodeToString(DigestUtils.md5(part)));
+            parts.put(request.getPartNumber(), part);
+
+            UploadPartResult result = new UploadPartResult();
+            result.setPartNumber(request.getPartNumber());
+            result.setETag(DigestUtils.md5Hex(part));
+            return result;
+        }
+
+        @Override
+        public CompleteMultipartUploadResult completeMultipartUpload(CompleteMultipartUploadRequest request) {
+            completes.add(request);
+            return new CompleteMultipartUploadResult();
+        }
+
+        @Override
+        public void abortMultipartUpload(AbortMultipartUploadRequest request) {
+            aborts.add(request);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.debijenkorf.assignment.service;
+
+import com.debijenkorf.assignment.app.configuration.LogDBProperties;
+import com.debijenkorf.assignment.app.configuration.SourceProperties;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SourceServiceTest {
+    private static final byte[] IMAGE = "image".getBytes(StandardCharsets.UTF_8);
+
+    private HttpServer server;
+    private SourceService sourceService;
+
+    private volatile int status = 200;
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::handle);
+        server.start();
+
+        SourceProperties sourceProperties = new SourceProperties();
+        ReflectionTestUtils.setField(sourceProperties, "rootUrl", "http://localhost:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(sourceProperties, "poolMaxTotal", 2);
+        ReflectionTestUtils.setField(sourceProperties, "poolMaxPerRoute", 2);
+        ReflectionTestUtils.setField(sourceProperties, "connectTimeoutMs", 1000);
+        ReflectionTestUtils.setField(sourceProperties, "socketTimeoutMs", 1000);
+        ReflectionTestUtils.setField(sourceProperties, "connectionRequestTimeoutMs", 1000);
+        ReflectionTestUtils.setField(sourceProperties, "keepAliveMs", 1000L);
+        ReflectionTestUtils.setField(sourceProperties, "maxResponseBytes", 1024);
+        ReflectionTestUtils.setField(sourceProperties, "negativeCacheTtlMs", 60000L);
+        ReflectionTestUtils.setField(sourceProperties, "negativeCacheMaxSize", 100L);
+
+        DbLogger dbLog = new DbLogger();
+        dbLog.setLogDBProperties(new LogDBProperties());
+
+        this.sourceService = new SourceService();
+        sourceService.setSourceProperties(sourceProperties);
+        sourceService.setMeterRegistry(new SimpleMeterRegistry());
+        sourceService.setDbLog(dbLog);
+        sourceService.postConstruct();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        sourceService.preDestroy();
+        server.stop(0);
+    }
+
+    @Test
+    void testOk_returnsBody() {
+        assertArrayEquals(IMAGE, sourceService.getImage("a.jpg"));
+        assertArrayEquals(IMAGE, sourceService.getImage("a.jpg"));
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    void testNotFound_remembered() {
+        this.status = 404;
+
+        assertNotFound("a.jpg");
+        assertNotFound("a.jpg");
+        assertEquals(1, requests.get());
+
+        sourceService.forgetMissing("a.jpg");
+        this.status = 200;
+        assertArrayEquals(IMAGE, sourceService.getImage("a.jpg"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {400, 403, 500, 502, 503})
+    void testOtherFailure_notRemembered(int failure) {
+        this.status = failure;
+
+        assertNotFound("a.jpg");
+        this.status = 200;
+        assertArrayEquals(IMAGE, sourceService.getImage("a.jpg"));
+        assertEquals(2, requests.get());
+    }
+
+    private void assertNotFound(String filename) {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class,
+                () -> sourceService.getImage(filename));
+        assertEquals(HttpStatus.NOT_FOUND, e.getStatusCode());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try (exchange) {
+            exchange.sendResponseHeaders(status, IMAGE.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(IMAGE);
+            }
+        }
+    }
+}
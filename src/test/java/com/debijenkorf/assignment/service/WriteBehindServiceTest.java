@@ -0,0 +1,90 @@
+package com.debijenkorf.assignment.service;
+
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WriteBehindServiceTest {
+    private static final byte[] DATA = "image".getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    private Path root;
+
+    private final CountDownLatch uploading = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+    private WriteBehindService writeBehind;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        StorageProperties storageProperties = new StorageProperties();
+        ReflectionTestUtils.setField(storageProperties, "filesystemPath", root.toString());
+        ReflectionTestUtils.setField(storageProperties, "writeBehindEnabled", true);
+        ReflectionTestUtils.setField(storageProperties, "writeBehindThreads", 1);
+        ReflectionTestUtils.setField(storageProperties, "writeBehindQueueCapacity", 10);
+        ReflectionTestUtils.setField(storageProperties, "writeBehindMaxAttempts", 1);
+
+        // the first upload blocks until it is released, so the uploads after it stay queued
+        FileSystemStorageService storage = new FileSystemStorageService() {
+            @Override
+            public void upload(String path, byte[] data, String contentType) throws IOException {
+                super.upload(path, data, contentType);
+                uploading.countDown();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+        storage.setStorageProperties(storageProperties);
+        storage.postConstruct();
+
+        this.writeBehind = new WriteBehindService();
+        writeBehind.setStorageProperties(storageProperties);
+        writeBehind.setStorageService(storage);
+        writeBehind.postConstruct();
+    }
+
+    @Test
+    void testCancelQueuedUpload_notUploaded() throws Exception {
+        assertTrue(writeBehind.submit("thumbnail/a.jpg", DATA, "image/jpeg"));
+        assertTrue(uploading.await(10, TimeUnit.SECONDS));
+        assertTrue(writeBehind.submit("thumbnail/b.jpg", DATA, "image/jpeg"));
+
+        writeBehind.cancel("thumbnail/b.jpg");
+        assertNull(writeBehind.getPending("thumbnail/b.jpg"));
+        release.countDown();
+        writeBehind.preDestroy();
+
+        assertTrue(Files.exists(root.resolve("thumbnail/a.jpg")));
+        assertFalse(Files.exists(root.resolve("thumbnail/b.jpg")));
+        assertEquals(1L, writeBehind.getStatistics().get("cancelled"));
+    }
+
+    @Test
+    void testCancelUploadInProgress_deletedAfterUpload() throws Exception {
+        assertTrue(writeBehind.submit("thumbnail/a.jpg", DATA, "image/jpeg"));
+        assertTrue(uploading.await(10, TimeUnit.SECONDS));
+
+        writeBehind.cancel("thumbnail/a.jpg");
+        release.countDown();
+        writeBehind.preDestroy();
+
+        assertFalse(Files.exists(root.resolve("thumbnail/a.jpg")));
+        assertEquals(0L, writeBehind.getStatistics().get("completed"));
+    }
+}
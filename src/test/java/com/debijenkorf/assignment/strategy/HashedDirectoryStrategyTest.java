@@ -0,0 +1,60 @@
+package com.debijenkorf.assignment.strategy;
+
+import com.debijenkorf.assignment.app.configuration.StorageProperties;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HashedDirectoryStrategyTest {
+    private HashedDirectoryStrategy strategy;
+    private StorageProperties storageProperties;
+
+    @BeforeEach
+    public void setUp() {
+        this.storageProperties = new StorageProperties();
+        this.strategy = new HashedDirectoryStrategy();
+        strategy.setStorageProperties(storageProperties);
+        strategy.setLegacyStrategy(new S3DirectoryStrategy());
+    }
+
+    @Test
+    void testGetDirectoryStrategy_layout() {
+        String result = strategy.getDirectoryStrategy("thumbnail", "abcdefghij.jpg");
+        assertTrue(result.matches("thumbnail/[0-9a-f]{2}/[0-9a-f]{2}/abcdefghij\\.jpg"), result);
+    }
+
+    @Test
+    void testGetDirectoryStrategy_delimiters() {
+        String result = strategy.getDirectoryStrategy("thumbnail", "/somedir/anotherdir/abcdef.jpg");
+        assertTrue(result.endsWith("/_somedir_anotherdir_abcdef.jpg"), result);
+        assertEquals(result, strategy.getDirectoryStrategy("thumbnail", "%2Fsomedir%2Fanotherdir%2Fabcdef.jpg"));
+    }
+
+    @Test
+    void testGetDirectoryStrategy_commonPrefixSpread() {
+        Set<String> prefixes = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            String path = strategy.getDirectoryStrategy("thumbnail", "brand-sku-000" + i + ".jpg");
+            prefixes.add(path.substring(0, path.lastIndexOf('/')));
+        }
+
+        assertTrue(prefixes.size() > 900, "prefixes: " + prefixes.size());
+    }
+
+    @Test
+    void testGetReadPaths_dualRead() {
+        assertEquals(1, strategy.getReadPaths("thumbnail", "abcdefghij.jpg").size());
+
+        ReflectionTestUtils.setField(storageProperties, "directoryDualRead", true);
+        List<String> paths = strategy.getReadPaths("thumbnail", "abcdefghij.jpg");
+        assertEquals(List.of(strategy.getDirectoryStrategy("thumbnail", "abcdefghij.jpg"),
+                "thumbnail/abcd/efgh/abcdefghij.jpg"), paths);
+    }
+}
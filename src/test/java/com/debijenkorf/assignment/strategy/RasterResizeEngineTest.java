@@ -0,0 +1,74 @@
+package com.debijenkorf.assignment.strategy;
+
+import com.debijenkorf.assignment.app.configuration.RenderProperties;
+import com.debijenkorf.assignment.data.ImageType;
+import com.debijenkorf.assignment.enums.ImageTypeEnum;
+import com.debijenkorf.assignment.enums.InterpolationEnum;
+import com.debijenkorf.assignment.enums.ScaleTypeEnum;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RasterResizeEngineTest {
+    private static final int RED = 0xFF0000;
+    private static final int BLUE = 0x0000FF;
+
+    private RasterResizeEngine engine;
+
+    @BeforeEach
+    public void setUp() {
+        RenderProperties renderProperties = new RenderProperties();
+        ReflectionTestUtils.setField(renderProperties, "interpolation", InterpolationEnum.BICUBIC);
+
+        this.engine = new RasterResizeEngine();
+        this.engine.setRenderProperties(renderProperties);
+    }
+
+    @ParameterizedTest
+    @EnumSource(ScaleTypeEnum.class)
+    void testResizeMatchesTargetSize(ScaleTypeEnum scaleType) {
+        ImageType imageType = new ImageType(100, 200, 90, "#FF0000", ImageTypeEnum.JPG, scaleType);
+
+        BufferedImage result = engine.resize(solidImage(1600, 900, BLUE), imageType);
+
+        assertEquals(200, result.getWidth());
+        assertEquals(100, result.getHeight());
+    }
+
+    @Test
+    void testFillPadsWithFillColor() {
+        ImageType imageType = new ImageType(100, 100, 90, "#FF0000", ImageTypeEnum.JPG, ScaleTypeEnum.FILL);
+
+        BufferedImage result = engine.resize(solidImage(2000, 1000, BLUE), imageType);
+
+        assertEquals(RED, result.getRGB(50, 0) & 0xFFFFFF);
+        assertEquals(RED, result.getRGB(50, 99) & 0xFFFFFF);
+        assertEquals(BLUE, result.getRGB(50, 50) & 0xFFFFFF);
+    }
+
+    @Test
+    void testCropCoversTarget() {
+        ImageType imageType = new ImageType(100, 100, 90, "#FF0000", ImageTypeEnum.JPG, ScaleTypeEnum.CROP);
+
+        BufferedImage result = engine.resize(solidImage(2000, 1000, BLUE), imageType);
+
+        assertEquals(BLUE, result.getRGB(0, 0) & 0xFFFFFF);
+        assertEquals(BLUE, result.getRGB(99, 99) & 0xFFFFFF);
+    }
+
+    private static BufferedImage solidImage(int width, int height, int rgb) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        Graphics2D graphics = image.createGraphics();
+        graphics.setColor(new Color(rgb));
+        graphics.fillRect(0, 0, width, height);
+        graphics.dispose();
+        return image;
+    }
+}
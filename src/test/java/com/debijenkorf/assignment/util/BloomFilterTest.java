@@ -0,0 +1,38 @@
+package com.debijenkorf.assignment.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BloomFilterTest {
+    private static final int INSERTIONS = 10_000;
+
+    @Test
+    void testMightContainAdded() {
+        BloomFilter filter = new BloomFilter(INSERTIONS, 0.01);
+        for (int i = 0; i < INSERTIONS; i++) {
+            filter.put("thumbnail/abcd/efgh/" + i + ".jpg");
+        }
+
+        for (int i = 0; i < INSERTIONS; i++) {
+            assertTrue(filter.mightContain("thumbnail/abcd/efgh/" + i + ".jpg"));
+        }
+    }
+
+    @Test
+    void testMightContainNotAdded() {
+        BloomFilter filter = new BloomFilter(INSERTIONS, 0.01);
+        for (int i = 0; i < INSERTIONS; i++) {
+            filter.put("thumbnail/abcd/efgh/" + i + ".jpg");
+        }
+
+        int falsePositives = 0;
+        for (int i = INSERTIONS; i < INSERTIONS * 2; i++) {
+            if (filter.mightContain("thumbnail/abcd/efgh/" + i + ".jpg")) {
+                falsePositives++;
+            }
+        }
+
+        assertTrue(falsePositives < INSERTIONS * 0.02, "false positives: " + falsePositives);
+    }
+}
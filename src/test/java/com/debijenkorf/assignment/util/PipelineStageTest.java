@@ -0,0 +1,74 @@
+package com.debijenkorf.assignment.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PipelineStageTest {
+    @Test
+    void testClose_processesQueuedItems() throws Exception {
+        List<Integer> processed = new CopyOnWriteArrayList<>();
+        PipelineStage<Integer> stage = new PipelineStage<>("slow", 1, 10, item -> {
+            TimeUnit.MILLISECONDS.sleep(5);
+            processed.add(item);
+        }, (item, e) -> { });
+        stage.start();
+
+        for (int i = 0; i < 10; i++) {
+            stage.put(i);
+        }
+        stage.close();
+
+        assertEquals(IntStream.range(0, 10).boxed().toList(), processed);
+        assertEquals(10L, stage.getStatistics().get("processed"));
+    }
+
+    @Test
+    void testCloseFirstToLast_itemsReachLastStage() throws Exception {
+        List<Integer> processed = new CopyOnWriteArrayList<>();
+        PipelineStage<Integer> last = new PipelineStage<>("last", 2, 2, processed::add, (item, e) -> { });
+        PipelineStage<Integer> first = new PipelineStage<>("first", 2, 2, item -> {
+            TimeUnit.MILLISECONDS.sleep(1);
+            last.put(item * 2);
+        }, (item, e) -> { });
+        first.start();
+        last.start();
+
+        for (int i = 0; i < 50; i++) {
+            first.put(i);
+        }
+        // the first stage only hands over to the last one while the last one is still open
+        first.close();
+        last.close();
+
+        assertEquals(50, processed.size());
+        assertEquals(IntStream.range(0, 50).map(x -> x * 2).sum(), processed.stream().mapToInt(x -> x).sum());
+    }
+
+    @Test
+    void testFailure_reportedAndNextItemsProcessed() throws Exception {
+        List<Integer> processed = new CopyOnWriteArrayList<>();
+        List<Integer> failed = new CopyOnWriteArrayList<>();
+        PipelineStage<Integer> stage = new PipelineStage<>("failing", 1, 10, item -> {
+            if (item == 1) {
+                throw new IllegalStateException("failed");
+            }
+            processed.add(item);
+        }, (item, e) -> failed.add(item));
+        stage.start();
+
+        for (int i = 0; i < 3; i++) {
+            stage.put(i);
+        }
+        stage.close();
+
+        assertEquals(List.of(0, 2), processed);
+        assertEquals(List.of(1), failed);
+        assertEquals(1L, stage.getStatistics().get("failed"));
+    }
+}
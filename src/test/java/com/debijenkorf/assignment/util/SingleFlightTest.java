@@ -0,0 +1,114 @@
+package com.debijenkorf.assignment.util;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTest {
+    private static final int CALLERS = 8;
+
+    private SingleFlight<String, String> singleFlight;
+
+    @BeforeEach
+    public void setUp() {
+        this.singleFlight = new SingleFlight<>();
+    }
+
+    @Test
+    void testConcurrentCallsShareOneExecution() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(CALLERS);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> {
+                    started.countDown();
+                    return singleFlight.execute("thumbnail/abcdef.jpg", () -> {
+                        executions.incrementAndGet();
+                        await(release);
+                        return "image";
+                    });
+                }));
+            }
+
+            started.await();
+            Thread.sleep(200);
+            release.countDown();
+
+            for (Future<String> result : results) {
+                assertEquals("image", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, executions.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testSequentialCallsExecuteAgain() {
+        AtomicInteger executions = new AtomicInteger();
+
+        singleFlight.execute("thumbnail/abcdef.jpg", () -> String.valueOf(executions.incrementAndGet()));
+        singleFlight.execute("thumbnail/abcdef.jpg", () -> String.valueOf(executions.incrementAndGet()));
+
+        assertEquals(2, executions.get());
+    }
+
+    @Test
+    void testFailureIsRethrown() {
+        IllegalStateException failure = new IllegalStateException("Image not found on source");
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> singleFlight.execute("thumbnail/abcdef.jpg", () -> {
+                    throw failure;
+                }));
+        assertEquals(failure, thrown);
+    }
+
+    @Test
+    void testConcurrentAsyncCallsShareOneFuture() throws Exception {
+        AtomicInteger executions = new AtomicInteger();
+        CompletableFuture<String> pending = new CompletableFuture<>();
+
+        CompletableFuture<String> first = singleFlight.executeAsync("thumbnail/abcdef.jpg", () -> {
+            executions.incrementAndGet();
+            return pending;
+        });
+        CompletableFuture<String> second = singleFlight.executeAsync("thumbnail/abcdef.jpg", () -> {
+            executions.incrementAndGet();
+            return CompletableFuture.completedFuture("other");
+        });
+        pending.complete("image");
+
+        assertEquals("image", first.get(5, TimeUnit.SECONDS));
+        assertEquals("image", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, executions.get());
+
+        // the completed call is not in flight anymore
+        assertEquals("again", singleFlight.executeAsync("thumbnail/abcdef.jpg",
+                () -> CompletableFuture.completedFuture("again")).get(5, TimeUnit.SECONDS));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}